@@ -0,0 +1,256 @@
+import financeapp.model.Command;
+import financeapp.service.AdmissionController;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Нагрузочный прогон допуска команд (запускается из scripts/admission-load.sh).
+ *
+ * "Шумные" пользователи без пауз, в несколько потоков каждый, шлют переводы.
+ * "Обычные" пользователи добавляют расход раз в 250 мс — в пределах своего лимита (5 команд в секунду).
+ * Половина обычных подобрана так, что при прежней раскладке корзин по 256 полосам (хэш логина)
+ * они попадали в полосу шумного пользователя ("соседи"), остальные — в свободные полосы.
+ * Выполнение команды имитирует запись кошелька на диск: диск один, записи идут по очереди
+ * (честная блокировка), перевод занимает 4 мс, расход — 1 мс.
+ *
+ * Прогон делается дважды: без ограничения (допуск пропускает всё) и с AdmissionController
+ * с настройками по умолчанию (financeapp.rate.*). Для обычных пользователей печатаем
+ * p50/p99/максимум задержки: от момента, когда команда должна была уйти по расписанию,
+ * до конца её выполнения (так задержка не прячется за пропущенными отправками).
+ *
+ * С допуском и соседи, и остальные обычные пользователи должны уложиться в пороги:
+ * p99 не больше load.p99.max.ms (по умолчанию 250 мс) и доля отказов не больше
+ * load.reject.max.share (по умолчанию 0.01). Иначе программа завершается с кодом 1.
+ */
+public class AdmissionLoad {
+    private static final ReentrantLock DISK = new ReentrantLock(true);
+    private static final int OLD_STRIPES = 256;
+
+    private static final double P99_MAX_MS = Double.parseDouble(System.getProperty("load.p99.max.ms", "250"));
+    private static final double REJECT_MAX_SHARE =
+            Double.parseDouble(System.getProperty("load.reject.max.share", "0.01"));
+
+    /**
+     * Итог прогона для одной группы обычных пользователей.
+     */
+    private static class Group {
+        final String name;
+        final long[] latencies;
+        final long rejected;
+
+        Group(String name, long[] latencies, long rejected) {
+            this.name = name;
+            this.latencies = latencies;
+            this.rejected = rejected;
+        }
+
+        double p99() {
+            return percentile(latencies, 0.99);
+        }
+
+        double rejectShare() {
+            return (double) rejected / (latencies.length + rejected);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int noisyUsers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int threadsPerNoisyUser = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int normalUsers = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        long seconds = args.length > 3 ? Long.parseLong(args[3]) : 10;
+
+        List<String> noisy = new ArrayList<>();
+        for (int u = 0; u < noisyUsers; u++) {
+            noisy.add("noisy" + u);
+        }
+        List<String> neighbours = new ArrayList<>();
+        List<String> distinct = new ArrayList<>();
+        for (int i = 0; neighbours.size() + distinct.size() < normalUsers; i++) {
+            String login = "user" + i;
+            boolean shares = false;
+            for (String n : noisy) {
+                shares |= oldStripe(n) == oldStripe(login);
+            }
+            if (shares && neighbours.size() < normalUsers / 2) {
+                neighbours.add(login);
+            } else if (!shares && distinct.size() < normalUsers - normalUsers / 2) {
+                distinct.add(login);
+            }
+        }
+
+        System.out.printf("Шумных пользователей: %d (по %d потоков), обычных: %d (соседей шумных: %d), %d с на режим%n",
+                noisyUsers, threadsPerNoisyUser, normalUsers, neighbours.size(), seconds);
+        System.out.printf("%-18s %-10s %8s %9s %9s %9s %9s %10s%n",
+                "режим", "группа", "команд", "p50, мс", "p99, мс", "макс, мс", "отказов", "переводов");
+
+        AdmissionController unlimited = new AdmissionController(1e9, 1e9, 1e9, 1e9, Integer.MAX_VALUE, 0);
+        run("без ограничения", unlimited, noisy, threadsPerNoisyUser, neighbours, distinct, seconds);
+        List<Group> limited = run("с допуском", new AdmissionController(), noisy, threadsPerNoisyUser,
+                neighbours, distinct, seconds);
+
+        boolean failed = false;
+        for (Group group : limited) {
+            if (group.latencies.length == 0) {
+                continue;
+            }
+            if (group.p99() > P99_MAX_MS) {
+                System.out.printf("ПРОВАЛ: p99 группы '%s' %.1f мс больше порога %.0f мс%n",
+                        group.name, group.p99(), P99_MAX_MS);
+                failed = true;
+            }
+            if (group.rejectShare() > REJECT_MAX_SHARE) {
+                System.out.printf("ПРОВАЛ: доля отказов группы '%s' %.3f больше порога %.3f%n",
+                        group.name, group.rejectShare(), REJECT_MAX_SHARE);
+                failed = true;
+            }
+        }
+        if (failed) {
+            System.exit(1);
+        }
+        System.out.printf("OK: p99 обычных пользователей не больше %.0f мс, доля отказов не больше %.3f%n",
+                P99_MAX_MS, REJECT_MAX_SHARE);
+    }
+
+    private static List<Group> run(String mode, AdmissionController admission, List<String> noisy,
+                                   int threadsPerNoisyUser, List<String> neighbours, List<String> distinct,
+                                   long seconds) throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong transfers = new AtomicLong();
+        List<Thread> noisyThreads = new ArrayList<>();
+        List<Thread> normalThreads = new ArrayList<>();
+
+        for (String login : noisy) {
+            for (int t = 0; t < threadsPerNoisyUser; t++) {
+                noisyThreads.add(new Thread(() -> {
+                    while (running.get()) {
+                        AdmissionController.Decision decision = admission.admit(login, Command.TRANSFER_FUNDS);
+                        if (decision.getStatus() == AdmissionController.Status.REJECTED) {
+                            // Клиент выполняет подсказку "повторить через": клиенты живут в одном процессе
+                            // с генератором, и повторы без паузы отняли бы у него процессор
+                            sleep(Math.max(1, decision.getWaitMillis()));
+                            continue;
+                        }
+                        execute(decision, admission, 4);
+                        transfers.incrementAndGet();
+                    }
+                }));
+            }
+        }
+
+        long periodNanos = TimeUnit.MILLISECONDS.toNanos(250);
+        int perUser = (int) (TimeUnit.SECONDS.toNanos(seconds) / periodNanos);
+        List<String> normal = new ArrayList<>(neighbours);
+        normal.addAll(distinct);
+        long[][] latencies = new long[normal.size()][perUser];
+        long[] rejected = new long[normal.size()];
+        for (int u = 0; u < normal.size(); u++) {
+            String login = normal.get(u);
+            int index = u;
+            normalThreads.add(new Thread(() -> {
+                long[] mine = latencies[index];
+                long scheduled = System.nanoTime();
+                for (int i = 0; i < mine.length; i++) {
+                    long now = System.nanoTime();
+                    if (scheduled > now) {
+                        sleep(TimeUnit.NANOSECONDS.toMillis(scheduled - now));
+                    }
+                    AdmissionController.Decision decision;
+                    while ((decision = admission.admit(login, Command.ADD_EXPENSE)).getStatus()
+                            == AdmissionController.Status.REJECTED) {
+                        rejected[index]++;
+                        sleep(Math.max(1, decision.getWaitMillis()));
+                    }
+                    execute(decision, admission, 1);
+                    mine[i] = System.nanoTime() - scheduled;
+                    scheduled += periodNanos;
+                }
+            }));
+        }
+
+        for (Thread thread : noisyThreads) {
+            thread.start();
+        }
+        for (Thread thread : normalThreads) {
+            thread.start();
+        }
+        // Ждём обычных пользователей, затем останавливаем шумных
+        for (Thread thread : normalThreads) {
+            thread.join();
+        }
+        running.set(false);
+        for (Thread thread : noisyThreads) {
+            thread.join();
+        }
+
+        List<Group> groups = new ArrayList<>();
+        groups.add(group("соседи", latencies, rejected, 0, neighbours.size()));
+        groups.add(group("остальные", latencies, rejected, neighbours.size(), normal.size()));
+        for (Group group : groups) {
+            long[] all = group.latencies;
+            if (all.length == 0) {
+                continue;
+            }
+            System.out.printf("%-18s %-10s %8d %9.1f %9.1f %9.1f %9d %10d%n", mode, group.name, all.length,
+                    percentile(all, 0.50), group.p99(), all[all.length - 1] / 1e6, group.rejected,
+                    transfers.get());
+        }
+        return groups;
+    }
+
+    private static Group group(String name, long[][] latencies, long[] rejected, int from, int to) {
+        long[] all = Arrays.stream(latencies, from, to).flatMapToLong(Arrays::stream).sorted().toArray();
+        long rejectedTotal = Arrays.stream(rejected, from, to).sum();
+        return new Group(name, all, rejectedTotal);
+    }
+
+    /**
+     * Полоса логина при прежней раскладке корзин (хэш логина по модулю числа полос).
+     */
+    private static int oldStripe(String login) {
+        int h = login.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h & (OLD_STRIPES - 1);
+    }
+
+    /**
+     * Выполнить допущенную команду: подождать, если допуск отложил её, затем "записать на диск".
+     */
+    private static void execute(AdmissionController.Decision decision, AdmissionController admission,
+                                long diskMillis) {
+        try {
+            sleep(decision.getWaitMillis());
+            DISK.lock();
+            try {
+                sleep(diskMillis);
+            } finally {
+                DISK.unlock();
+            }
+        } finally {
+            admission.release(decision);
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
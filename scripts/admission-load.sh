@@ -0,0 +1,21 @@
+#!/bin/sh
+# Нагрузочный прогон допуска команд: задержки обычных пользователей (p50/p99/максимум),
+# пока шумные пользователи заваливают процесс переводами, — без ограничения и с AdmissionController.
+# Настройки допуска берутся из свойств financeapp.rate.* (их можно передать через JAVA_OPTS).
+#
+# Скрипт завершается с ошибкой, если с допуском у обычных пользователей (отдельно — у тех, кто
+# при прежних 256 полосах делил корзину с шумным, и у остальных) p99 больше P99_MAX_MS
+# (по умолчанию 250 мс) или доля отказов больше REJECT_MAX_SHARE (по умолчанию 0.01).
+#
+# Использование: scripts/admission-load.sh [шумных пользователей, по умолчанию 4]
+#                [потоков на шумного, 8] [обычных пользователей, 16] [секунд на режим, 10]
+set -e
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+javac -encoding UTF-8 -d "$WORK/classes" $(find "$ROOT/src" -name '*.java')
+java $JAVA_OPTS -Dfile.encoding=UTF-8 \
+     -Dload.p99.max.ms="${P99_MAX_MS:-250}" -Dload.reject.max.share="${REJECT_MAX_SHARE:-0.01}" \
+     -cp "$WORK/classes" "$ROOT/scripts/AdmissionLoad.java" "$@"
@@ -0,0 +1,13 @@
+#!/bin/sh
+# Быстрый запуск: AppCDS-архив (если он есть) и только C1-компилятор,
+# который для коротких CLI-сессий выгоднее полного JIT.
+# Архив и jar создаются скриптом scripts/cds-train.sh.
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+OUT="$ROOT/out"
+
+if [ -f "$OUT/finance.jsa" ]; then
+    exec java -XX:SharedArchiveFile="$OUT/finance.jsa" -XX:TieredStopAtLevel=1 \
+         -Dfile.encoding=UTF-8 -jar "$OUT/finance.jar" "$@"
+else
+    exec java -XX:TieredStopAtLevel=1 -Dfile.encoding=UTF-8 -jar "$OUT/finance.jar" "$@"
+fi
@@ -0,0 +1,96 @@
+#!/bin/sh
+# Проверка репликации несколькими процессами на одной машине.
+#
+# В общей папке одновременно работают несколько основных процессов (по одному на пользователя),
+# каждый делает переводы пользователю shared — это частые сохранения больших (> 8 КБ) кошельков.
+# В это же время реплика в своей папке раз в 50 мс догоняет журнал и пишет отставание в байтах.
+# Порог сжатия журнала маленький, чтобы сжатие тоже происходило во время теста.
+#
+# В конце проверяем, что реплика догнала основной процесс (отставание 0, файлы совпадают
+# байт в байт, ошибок чтения журнала нет), и выводим максимальное отставание за время теста.
+#
+# Использование: scripts/replication-test.sh [число процессов, по умолчанию 4] [переводов на процесс, по умолчанию 40]
+set -e
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+WRITERS=${1:-4}
+TRANSFERS=${2:-40}
+
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+mkdir -p "$WORK/classes" "$WORK/primary" "$WORK/replica"
+javac -encoding UTF-8 -d "$WORK/classes" $(find "$ROOT/src" -name '*.java')
+
+# Лимиты частоты снимаем: команды идут без пауз
+JAVA="java -Dfile.encoding=UTF-8 -cp $WORK/classes
+      -Dfinanceapp.rate.user.burst=100000 -Dfinanceapp.rate.user.per.sec=100000
+      -Dfinanceapp.rate.global.burst=100000 -Dfinanceapp.rate.global.per.sec=100000"
+PRIMARY="-Dfinanceapp.replication.dir=$WORK/primary -Dfinanceapp.replication.max.bytes=262144"
+
+# Пользователей регистрируем по очереди: users.dat каждый процесс переписывает целиком
+cd "$WORK/primary"
+for user in shared $(seq 1 "$WRITERS" | sed 's/^/writer/'); do
+    printf '%s\npw\ny\n8\n' "$user" | $JAVA $PRIMARY financeapp.Main > /dev/null
+done
+
+# Реплика: догоняет журнал перед каждой командой, пока не появится файл done
+cd "$WORK/replica"
+{
+    printf 'shared\npw\n'
+    while [ ! -f "$WORK/done" ]; do
+        printf '5\n'
+        sleep 0.05
+    done
+    printf '5\n5\n8\n'
+} | $JAVA -Dfinanceapp.replication.trace=true financeapp.Main --follower "$WORK/primary" \
+      > "$WORK/replica.log" 2> "$WORK/lag.log" &
+REPLICA_PID=$!
+
+# Основные процессы работают одновременно
+cd "$WORK/primary"
+START=$(date +%s%N)
+PIDS=""
+for w in $(seq 1 "$WRITERS"); do
+    {
+        printf 'writer%s\npw\n' "$w"
+        i=0
+        while [ "$i" -lt "$TRANSFERS" ]; do
+            printf '7\nshared\nперевод %s-%s\n1\n' "$w" "$i"
+            i=$((i + 1))
+        done
+        printf '8\n'
+    } | $JAVA $PRIMARY financeapp.Main > "$WORK/writer$w.log" &
+    PIDS="$PIDS $!"
+done
+for pid in $PIDS; do
+    wait "$pid"
+done
+ELAPSED=$(( ($(date +%s%N) - START) / 1000000 ))
+
+touch "$WORK/done"
+wait "$REPLICA_PID"
+
+FAILED=0
+if grep -q 'Ошибка чтения журнала' "$WORK/replica.log"; then
+    grep 'Ошибка чтения журнала' "$WORK/replica.log" >&2
+    FAILED=1
+fi
+for file in "$WORK"/primary/users.dat "$WORK"/primary/wallet_*.dat; do
+    if ! cmp -s "$file" "$WORK/replica/$(basename "$file")"; then
+        echo "Реплика не совпадает с основным процессом: $(basename "$file")" >&2
+        FAILED=1
+    fi
+done
+
+LAG_MAX=$(sed -n 's/^replica-lag-bytes=//p' "$WORK/lag.log" | sort -n | tail -1)
+LAG_LAST=$(sed -n 's/^replica-lag-bytes=//p' "$WORK/lag.log" | tail -1)
+SAMPLES=$(grep -c '^replica-lag-bytes=' "$WORK/lag.log")
+
+echo "Процессов: $WRITERS, переводов на процесс: $TRANSFERS, время записи: $ELAPSED мс"
+echo "Журнал: $(stat -c %s "$WORK/primary/changes.log") байт, поколение $(cut -d' ' -f1 "$WORK/replica/replica.offset")"
+echo "Замеров отставания: $SAMPLES, максимум: $LAG_MAX байт, в конце: $LAG_LAST байт"
+if [ "$FAILED" -ne 0 ] || [ "$LAG_LAST" != "0" ]; then
+    echo "ПРОВАЛ: реплика не сошлась с основным процессом" >&2
+    exit 1
+fi
+echo "OK: реплика сошлась с основным процессом"
@@ -0,0 +1,65 @@
+#!/bin/sh
+# Замер времени запуска без AppCDS-архива и с ним. Перед запуском выполните scripts/cds-train.sh.
+#
+# Данные готовятся заранее, чтобы запуск делал ту же работу, что и у настоящего пользователя:
+# users.dat с несколькими десятками пользователей и кошелёк bench с историей за два года
+# (ежедневный расход и ежемесячный доход; старая часть истории уходит в холодный сегмент).
+# Каждый прогон входит под bench и сразу выходит. Измеряются две точки:
+# - до приглашения ввести логин,
+# - до первого меню (пользователи загружены, пароль проверен, кошелёк прочитан).
+#
+# Использование: scripts/startup-bench.sh [число запусков, по умолчанию 20] [пользователей, по умолчанию 30]
+set -e
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+OUT="$ROOT/out"
+RUNS=${1:-20}
+USERS=${2:-30}
+
+if [ ! -f "$OUT/finance.jar" ] || [ ! -f "$OUT/finance.jsa" ]; then
+    echo "Нет out/finance.jar или out/finance.jsa — сначала запустите scripts/cds-train.sh" >&2
+    exit 1
+fi
+
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+cd "$WORK"
+
+# Подготовка данных (лимиты частоты снимаем: команды идут без пауз)
+SETUP="java -Dfile.encoding=UTF-8 -Dfinanceapp.rate.user.burst=100000 -jar $OUT/finance.jar"
+i=1
+while [ "$i" -le "$USERS" ]; do
+    printf 'user%s\npw\ny\n8\n' "$i" | $SETUP > /dev/null
+    i=$((i + 1))
+done
+START=$(date -d '730 days ago' +%F)
+# Ежедневный расход накопит больше 100 срабатываний — подтверждаем догонялку ("y")
+printf 'bench\nbench\ny\n10\n2\nОбед\n300\nЕда\n1\n%s\ny\n10\n1\nЗарплата\n50000\nмесяц\n%s\n8\n' \
+    "$START" "$START" | $SETUP > /dev/null
+# Первый вход после догонялки уносит старые операции в холодный сегмент
+printf 'bench\nbench\n8\n' | $SETUP > /dev/null
+echo "Данные: $(wc -c < users.dat) байт users.dat, $(wc -c < wallet_bench.dat) байт wallet_bench.dat"
+
+# Средние "до логина" и "до меню" в мс за RUNS запусков
+measure() {
+    total_prompt=0
+    total_menu=0
+    i=0
+    while [ "$i" -lt "$RUNS" ]; do
+        trace=$(printf 'bench\nbench\n8\n' | java "$@" -Dfinanceapp.startup.trace=true \
+                    -jar "$OUT/finance.jar" 2>&1 >/dev/null)
+        prompt=$(echo "$trace" | sed -n 's/^time-to-first-prompt-ms=//p')
+        menu=$(echo "$trace" | sed -n 's/^time-to-menu-ms=//p')
+        total_prompt=$((total_prompt + prompt))
+        total_menu=$((total_menu + menu))
+        i=$((i + 1))
+    done
+    echo "$((total_prompt / RUNS)) мс до приглашения, $((total_menu / RUNS)) мс до меню"
+}
+
+BEFORE=$(measure -Xshare:auto)
+AFTER=$(measure -XX:SharedArchiveFile="$OUT/finance.jsa" -XX:TieredStopAtLevel=1)
+
+echo "Запусков: $RUNS"
+echo "Без архива (только CDS JDK): $BEFORE"
+echo "С AppCDS-архивом и C1:      $AFTER"
@@ -1,26 +1,54 @@
 package financeapp;
 
 import financeapp.data.DataManager;
+import financeapp.data.ReplicaFollower;
+import financeapp.data.ReportExporter;
+import financeapp.model.BudgetPeriod;
 import financeapp.model.Command;
+import financeapp.model.Operation;
 import financeapp.model.User;
+import financeapp.service.AdmissionController;
 import financeapp.service.FinanceManager;
 
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.InputMismatchException;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
 
 public class Main {
 
     private static final Scanner scanner = new Scanner(System.in);
     private static FinanceManager financeManager;
+    // Ограничение частоты команд, чтобы поток запросов одного пользователя не забивал диск
+    private static final AdmissionController admission = new AdmissionController();
+    // Фоновая загрузка пользователей: идёт, пока человек вводит логин и пароль
+    private static CompletableFuture<Void> usersLoading = CompletableFuture.completedFuture(null);
+    // Спрашивать ли ключ идемпотентности при вводе операций (включается свойством, чтобы
+    // не менять привычный порядок ввода и скрипты, которые подают команды через stdin)
+    private static final boolean ASK_IDEMPOTENCY_KEY = Boolean.getBoolean("financeapp.dedup.prompt");
 
     public static void main(String[] args) {
-        // Перед началом работы читаем список пользователей (если он уже есть)
-        DataManager.loadUsers();
+        // Режим реплики: java financeapp.Main --follower <папка основного процесса>
+        if (args.length >= 2 && args[0].equals("--follower")) {
+            runFollower(args[1]);
+            return;
+        }
+
+        // Список пользователей (десериализация) и SHA-256 готовим в фоне,
+        // чтобы приглашение ко вводу появилось сразу, а не после чтения файлов
+        usersLoading = CompletableFuture.runAsync(() -> {
+            DataManager.loadUsers();
+            DataManager.warmUpPasswordHashing();
+        });
 
         System.out.println("Добро пожаловать в систему управления личными финансами!");
 
         // Авторизуем (или регистрируем) пользователя
-        User currentUser = authenticateUser();
+        User currentUser = authenticateUser(true);
         if (currentUser == null) {
             // Если не авторизовались — завершаем
             System.out.println("Авторизация не удалась. Завершение работы приложения.");
@@ -30,7 +58,11 @@ public class Main {
         // Создаём менеджер для управлением кошельком
         financeManager = new FinanceManager(currentUser);
 
+        // Догоняем регулярные операции, срок которых наступил с прошлого запуска
+        catchUpRecurringOperations();
+
         // Основной цикл — пока running = true, будем показывать меню и обрабатывать команды
+        traceStartup("time-to-menu-ms");
         boolean running = true;
         while (running) {
             printMenu();
@@ -38,51 +70,198 @@ public class Main {
             String userInput = scanner.nextLine().trim();
             Command command = Command.fromCode(userInput);
 
+            // Сначала спрашиваем допуск: при перегрузке команда ждёт своей очереди
+            AdmissionController.Decision decision = admitCommand(currentUser.getLogin(), command);
+
+            try {
+                running = dispatchCommand(command);
+            } finally {
+                admission.release(decision);
+            }
+        }
+
+    }
+
+    /**
+     * Выполнить команду основного меню.
+     * @return false, если пользователь выбрал выход
+     */
+    private static boolean dispatchCommand(Command command) {
+        boolean running = true;
+        switch (command) {
+            case ADD_INCOME:
+                addIncome();
+                break;
+            case ADD_EXPENSE:
+                addExpense();
+                break;
+            case SET_CATEGORY_BUDGET:
+                setCategoryBudget();
+                break;
+            case LIST_CATEGORIES:
+                listCategories();
+                break;
+            case SHOW_OVERALL_STATS:
+                showOverallStats();
+                break;
+            case SHOW_CATEGORY_STATS:
+                showCategoryStats();
+                break;
+            case TRANSFER_FUNDS:
+                transferFunds();
+                break;
+            case EXIT:
+                exitAndSaveData();
+                running = false;
+                break;
+            case SET_CATEGORY_PERIOD:
+                setCategoryPeriod();
+                break;
+            case ADD_RECURRING_OPERATION:
+                addRecurringOperation();
+                break;
+            case LIST_RECURRING_OPERATIONS:
+                financeManager.listRecurringOperations();
+                break;
+            case SEARCH_OPERATIONS:
+                searchOperations();
+                break;
+            case ADD_CATEGORY_RULE:
+                addCategoryRule();
+                break;
+            case EXPORT_DATA:
+                exportData();
+                break;
+            case VERIFY_LEDGER:
+                verifyLedger();
+                break;
+            default:
+                System.out.println("Неизвестная команда. Попробуйте ещё раз.");
+        }
+        return running;
+    }
+
+    /**
+     * Получить допуск на выполнение команды.
+     * Если команду нужно отложить ненадолго — ждём. Если она отклонена — тоже ждём и спрашиваем снова:
+     * консоль читает ввод построчно, и отказ без чтения параметров команды сдвинул бы весь
+     * дальнейший ввод (параметры были бы приняты за номера команд).
+     * @return решение для последующего release()
+     */
+    private static AdmissionController.Decision admitCommand(String login, Command command) {
+        boolean warned = false;
+        while (true) {
+            AdmissionController.Decision decision = admission.admit(login, command);
+            if (decision.getStatus() != AdmissionController.Status.REJECTED) {
+                sleepQuietly(decision.getWaitMillis());
+                return decision;
+            }
+            if (!warned) {
+                System.out.println("Слишком много запросов. Команда будет выполнена через "
+                        + decision.getWaitMillis() + " мс.");
+                warned = true;
+            }
+            sleepQuietly(Math.max(1, decision.getWaitMillis()));
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Режим реплики: догоняем журнал основного процесса и обслуживаем только
+     * команды чтения статистики. Перед каждой командой снова догоняем журнал,
+     * так что ответ отражает все изменения, записанные основным процессом к этому моменту.
+     */
+    private static void runFollower(String primaryDir) {
+        ReplicaFollower follower = new ReplicaFollower(primaryDir);
+        int applied = follower.catchUp();
+        System.out.println("Реплика: применено записей журнала: " + applied + ", поколение: "
+                + follower.getGeneration() + ", смещение: " + follower.getOffset());
+
+        DataManager.loadUsers();
+        System.out.println("Добро пожаловать! Это реплика: доступен только просмотр статистики.");
+
+        User currentUser = authenticateUser(false);
+        if (currentUser == null) {
+            System.out.println("Авторизация не удалась. Завершение работы приложения.");
+            return;
+        }
+        financeManager = new FinanceManager(currentUser);
+
+        boolean running = true;
+        while (running) {
+            printFollowerMenu();
+
+            String userInput = scanner.nextLine().trim();
+            Command command = Command.fromCode(userInput);
+
             switch (command) {
-                case ADD_INCOME:
-                    addIncome();
-                    break;
-                case ADD_EXPENSE:
-                    addExpense();
-                    break;
-                case SET_CATEGORY_BUDGET:
-                    setCategoryBudget();
-                    break;
                 case LIST_CATEGORIES:
+                    refreshFromPrimary(follower, currentUser);
                     listCategories();
                     break;
                 case SHOW_OVERALL_STATS:
+                    refreshFromPrimary(follower, currentUser);
                     showOverallStats();
                     break;
                 case SHOW_CATEGORY_STATS:
+                    refreshFromPrimary(follower, currentUser);
                     showCategoryStats();
                     break;
-                case TRANSFER_FUNDS:
-                    transferFunds();
-                    break;
                 case EXIT:
-                    exitAndSaveData();
+                    System.out.println("Выходим из программы (реплика ничего не сохраняет)...");
                     running = false;
                     break;
                 default:
-                    System.out.println("Неизвестная команда. Попробуйте ещё раз.");
+                    System.out.println("Команда недоступна на реплике (только чтение).");
             }
         }
+    }
 
+    /**
+     * Догнать журнал; если пришли новые записи, перечитать кошелёк пользователя.
+     * Если задано -Dfinanceapp.replication.trace=true, в stderr выводится отставание
+     * (используется скриптом scripts/replication-test.sh).
+     */
+    private static void refreshFromPrimary(ReplicaFollower follower, User currentUser) {
+        if (Boolean.getBoolean("financeapp.replication.trace")) {
+            System.err.println("replica-lag-bytes=" + follower.getLagBytes());
+        }
+        if (follower.catchUp() > 0) {
+            financeManager = new FinanceManager(currentUser);
+        }
     }
 
     /**
      * Метод для авторизации или регистрации пользователя.
+     * @param allowRegistration можно ли предложить регистрацию (на реплике — нельзя)
      * @return Объект User или null (если не удалось залогиниться/зарегистрироваться)
      */
-    private static User authenticateUser() {
+    private static User authenticateUser(boolean allowRegistration) {
+        traceStartup("time-to-first-prompt-ms");
         System.out.print("Введите логин: ");
         String login = scanner.nextLine().trim();
         System.out.print("Введите пароль: ");
         String password = scanner.nextLine().trim();
 
+        // К этому моменту список пользователей обычно уже загружен
+        usersLoading.join();
+
         // Проверяем, есть ли уже такой логин в системе
         User user = DataManager.getUserByLogin(login);
+        if (user == null && !allowRegistration) {
+            System.out.println("Пользователь не найден.");
+            return null;
+        }
         if (user == null) {
             // Если пользователя с таким логином нет, можем предложить зарегистрироваться
             System.out.println("Пользователь не найден. Желаете зарегистрироваться (y/n)?");
@@ -127,6 +306,40 @@ public class Main {
         System.out.println("6. Показать подробную статистику по категориям");
         System.out.println("7. Перевести средства другому пользователю (доп.)");
         System.out.println("8. Выйти (с сохранением данных)");
+        System.out.println("9. Установить период бюджета категории (месяц/неделя/N дней)");
+        System.out.println("10. Добавить регулярную операцию (зарплата, подписка)");
+        System.out.println("11. Показать регулярные операции");
+        System.out.println("12. Найти операции по описанию");
+        System.out.println("13. Добавить правило автоопределения категории");
+        System.out.println("14. Выгрузить операции или статистику в файл (CSV/JSON/колоночный)");
+        System.out.println("15. Проверить журнал операций");
+        System.out.print("Введите номер команды и нажмите Enter: ");
+    }
+
+    /**
+     * Если задано -Dfinanceapp.startup.trace=true, выводим в stderr время от старта JVM
+     * до очередной точки запуска (используется скриптом scripts/startup-bench.sh):
+     * time-to-first-prompt-ms — приглашение ввести логин,
+     * time-to-menu-ms — первое меню (пользователи и кошелёк уже загружены).
+     */
+    private static void traceStartup(String name) {
+        if (Boolean.getBoolean("financeapp.startup.trace")) {
+            // Сначала фиксируем текущее время, а потом уже загружаем классы JMX для времени старта
+            long now = System.currentTimeMillis();
+            long start = ManagementFactory.getRuntimeMXBean().getStartTime();
+            System.err.println(name + "=" + (now - start));
+        }
+    }
+
+    /**
+     * Меню реплики: только команды чтения.
+     */
+    private static void printFollowerMenu() {
+        System.out.println("\nМеню команд (реплика):");
+        System.out.println("4. Показать все категории");
+        System.out.println("5. Показать общую статистику (доход/расход/баланс)");
+        System.out.println("6. Показать подробную статистику по категориям");
+        System.out.println("8. Выйти");
         System.out.print("Введите номер команды и нажмите Enter: ");
     }
 
@@ -140,10 +353,13 @@ public class Main {
         // Просим ввести сумму дохода и безопасно пытаемся считать double
         double amount = readDoubleFromConsole("Введите сумму дохода: ");
 
+        String idempotencyKey = readIdempotencyKey();
+
         try {
             // Вызываем метод менеджера для добавления дохода
-            financeManager.addIncome(description, amount);
-            System.out.println("Доход успешно добавлен!");
+            if (financeManager.addIncome(description, amount, idempotencyKey)) {
+                System.out.println("Доход успешно добавлен!");
+            }
         } catch (IllegalArgumentException e) {
             // Если в методе addIncome была брошена ошибка, выводим сообщение
             System.out.println("Ошибка: " + e.getMessage());
@@ -152,6 +368,7 @@ public class Main {
 
     /**
      * Аналогично, добавляем расход. Запрашиваем описание, сумму и категорию.
+     * Если категорию не ввести, она определится по описанию (правила и история).
      */
     private static void addExpense() {
         System.out.print("Введите описание расхода (например, Покупка продуктов): ");
@@ -159,12 +376,20 @@ public class Main {
 
         double amount = readDoubleFromConsole("Введите сумму расхода: ");
 
-        System.out.print("Введите категорию расхода (например, Еда, Такси): ");
+        String suggested = financeManager.suggestCategory(description);
+        if (suggested != null) {
+            System.out.print("Введите категорию расхода (Enter — " + suggested + "): ");
+        } else {
+            System.out.print("Введите категорию расхода (например, Еда, Такси): ");
+        }
         String categoryName = scanner.nextLine().trim();
 
+        String idempotencyKey = readIdempotencyKey();
+
         try {
-            financeManager.addExpense(description, amount, categoryName);
-            System.out.println("Расход успешно добавлен!");
+            if (financeManager.addExpense(description, amount, categoryName, idempotencyKey)) {
+                System.out.println("Расход успешно добавлен!");
+            }
         } catch (IllegalArgumentException e) {
             System.out.println("Ошибка: " + e.getMessage());
         }
@@ -187,6 +412,187 @@ public class Main {
         }
     }
 
+    /**
+     * Запрашиваем название категории и период бюджета: "месяц", "неделя" или число дней.
+     */
+    private static void setCategoryPeriod() {
+        System.out.print("Введите название категории: ");
+        String categoryName = scanner.nextLine().trim();
+
+        System.out.print("Введите период (месяц, неделя или число дней; Enter — месяц): ");
+        String periodText = scanner.nextLine().trim();
+
+        try {
+            BudgetPeriod period = BudgetPeriod.parse(periodText);
+            financeManager.setBudgetPeriodForCategory(categoryName, period);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Ошибка: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Запрашиваем правило регулярной операции: тип, описание, сумму, категорию (для расхода),
+     * периодичность и дату первого срабатывания.
+     */
+    private static void addRecurringOperation() {
+        System.out.print("Тип операции (1 — доход, 2 — расход): ");
+        String type = scanner.nextLine().trim();
+        if (!type.equals("1") && !type.equals("2")) {
+            System.out.println("Ошибка: неизвестный тип операции.");
+            return;
+        }
+        boolean isIncome = type.equals("1");
+
+        System.out.print("Введите описание (например, Зарплата или Подписка): ");
+        String description = scanner.nextLine().trim();
+
+        double amount = readDoubleFromConsole("Введите сумму: ");
+
+        String categoryName = null;
+        if (!isIncome) {
+            System.out.print("Введите категорию расхода: ");
+            categoryName = scanner.nextLine().trim();
+        }
+
+        System.out.print("Введите период (месяц, неделя или число дней; Enter — месяц): ");
+        String periodText = scanner.nextLine().trim();
+
+        System.out.print("Дата первого срабатывания (ГГГГ-ММ-ДД; Enter — сегодня): ");
+        String dateText = scanner.nextLine().trim();
+
+        try {
+            BudgetPeriod period = BudgetPeriod.parse(periodText);
+            LocalDate startDate = dateText.isEmpty() ? LocalDate.now() : LocalDate.parse(dateText);
+            financeManager.addRecurringOperation(isIncome, description, amount, categoryName, period, startDate);
+            // Дата первого срабатывания может быть в прошлом
+            catchUpRecurringOperations();
+        } catch (DateTimeParseException e) {
+            System.out.println("Ошибка: некорректная дата (формат: 2024-01-31).");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Ошибка: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Провести наступившие регулярные операции. Если их накопилось слишком много
+     * (например, дата начала указана на годы назад), сначала спрашиваем подтверждение.
+     */
+    private static void catchUpRecurringOperations() {
+        int due = financeManager.countDueRecurringOperations();
+        if (due > FinanceManager.RECURRING_CATCH_UP_LIMIT) {
+            System.out.print("Накопилось больше " + FinanceManager.RECURRING_CATCH_UP_LIMIT
+                    + " пропущенных регулярных операций. Провести их все (y — да, n — пропустить)? ");
+            String answer = scanner.nextLine().trim();
+            if (!answer.equalsIgnoreCase("y")) {
+                financeManager.skipRecurringOperations();
+                return;
+            }
+        }
+        financeManager.runRecurringOperations();
+    }
+
+    /**
+     * Запрашиваем ключевое слово и категорию для правила автоопределения.
+     */
+    private static void addCategoryRule() {
+        System.out.print("Введите ключевое слово (например, такси): ");
+        String keyword = scanner.nextLine().trim();
+
+        System.out.print("Введите категорию (например, Транспорт): ");
+        String categoryName = scanner.nextLine().trim();
+
+        financeManager.addCategoryRule(keyword, categoryName);
+    }
+
+    /**
+     * Выгрузка в файл: спрашиваем, что выгружать, формат и имя файла.
+     */
+    private static void exportData() {
+        System.out.print("Что выгрузить (1 — операции, 2 — статистику по категориям): ");
+        String what = scanner.nextLine().trim();
+        if (!what.equals("1") && !what.equals("2")) {
+            System.out.println("Ошибка: неизвестный вариант выгрузки.");
+            return;
+        }
+
+        System.out.print("Формат (csv, jsonl, col): ");
+        ReportExporter.Format format = ReportExporter.Format.parse(scanner.nextLine());
+        if (format == null) {
+            System.out.println("Ошибка: неизвестный формат.");
+            return;
+        }
+
+        System.out.print("Имя файла: ");
+        String fileName = scanner.nextLine().trim();
+        if (fileName.isEmpty() || DataManager.isDataFile(fileName)) {
+            System.out.println("Ошибка: для выгрузки нужно другое имя файла (файлы данных приложения перезаписывать нельзя).");
+            return;
+        }
+
+        // Существующий файл перезаписываем только с подтверждения
+        boolean overwrite = false;
+        if (new File(fileName).exists()) {
+            System.out.print("Файл '" + fileName + "' уже существует. Перезаписать (y/n)? ");
+            if (!scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                System.out.println("Выгрузка отменена.");
+                return;
+            }
+            overwrite = true;
+        }
+
+        if (what.equals("1")) {
+            financeManager.exportOperations(fileName, format, overwrite);
+        } else {
+            financeManager.exportCategoryStats(fileName, format, overwrite);
+        }
+    }
+
+    /**
+     * Проверка журнала: быстрая (с последней контрольной точки) или полная.
+     */
+    private static void verifyLedger() {
+        System.out.print("Проверка (1 — быстрая, с последней контрольной точки; 2 — полная): ");
+        String mode = scanner.nextLine().trim();
+        if (!mode.equals("1") && !mode.equals("2")) {
+            System.out.println("Ошибка: неизвестный вариант проверки.");
+            return;
+        }
+        financeManager.verifyLedger(mode.equals("2"));
+    }
+
+    /**
+     * Поиск операций: слова из описания, плюс необязательные категория и диапазон дат.
+     */
+    private static void searchOperations() {
+        System.out.print("Введите слова для поиска (например, продукты): ");
+        String query = scanner.nextLine().trim();
+
+        System.out.print("Категория (Enter — любая): ");
+        String categoryName = scanner.nextLine().trim();
+
+        System.out.print("С даты (ГГГГ-ММ-ДД; Enter — без ограничения): ");
+        String fromText = scanner.nextLine().trim();
+        System.out.print("По дату (ГГГГ-ММ-ДД; Enter — без ограничения): ");
+        String toText = scanner.nextLine().trim();
+
+        try {
+            LocalDate from = fromText.isEmpty() ? null : LocalDate.parse(fromText);
+            LocalDate to = toText.isEmpty() ? null : LocalDate.parse(toText);
+
+            List<Operation> found = financeManager.searchOperations(query, categoryName, from, to);
+            if (found.isEmpty()) {
+                System.out.println("Ничего не найдено.");
+                return;
+            }
+            System.out.println("Найдено операций: " + found.size());
+            for (Operation op : found) {
+                System.out.println("- " + op);
+            }
+        } catch (DateTimeParseException e) {
+            System.out.println("Ошибка: некорректная дата (формат: 2024-01-31).");
+        }
+    }
+
     /**
      * Вывести список категорий.
      */
@@ -227,8 +633,10 @@ public class Main {
 
         double amount = readDoubleFromConsole("Введите сумму перевода: ");
 
+        String idempotencyKey = readIdempotencyKey();
+
         try {
-            financeManager.transferFunds(recipientLogin, description, amount);
+            financeManager.transferFunds(recipientLogin, description, amount, idempotencyKey);
         } catch (IllegalArgumentException e) {
             System.out.println("Ошибка: " + e.getMessage());
         }
@@ -244,6 +652,21 @@ public class Main {
         System.out.println("Данные успешно сохранены. Выходим из программы...");
     }
 
+    /**
+     * Необязательный ключ идемпотентности (например, номер платежа из банковской выписки).
+     * Повторная операция с тем же ключом не будет проведена.
+     * Спрашиваем только при -Dfinanceapp.dedup.prompt=true.
+     * @return ключ или null, если пользователь его не ввёл
+     */
+    private static String readIdempotencyKey() {
+        if (!ASK_IDEMPOTENCY_KEY) {
+            return null;
+        }
+        System.out.print("Ключ операции для защиты от повтора (Enter — без ключа): ");
+        String key = scanner.nextLine().trim();
+        return key.isEmpty() ? null : key;
+    }
+
     /**
      * Вспомогательный метод для безопасного считывания double.
      * Если пользователь вводит некорректные данные, просим повторить ввод.
@@ -4,6 +4,8 @@ import financeapp.model.User;
 import financeapp.model.Wallet;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
@@ -16,14 +18,22 @@ import java.util.HashMap;
  *
  * Смысл этого разделения такой: общее хранилище (usersMap) знает, какие пользователи есть,
  * а каждый пользователь имеет свой файл "wallet_<login>.dat", где находится его кошелёк.
+ *
+ * Если включена репликация (см. ReplicationLog), каждое сохранение дополнительно
+ * попадает в журнал изменений, который читают реплики.
  */
 public class DataManager {
     // Здесь храним путь к файлу со списком всех пользователей
-    private static final String USERS_FILE = "users.dat";
+    static final String USERS_FILE = "users.dat";
 
     // Мапа "логин -> пользователь". В памяти на время работы программы.
     private static HashMap<String, User> usersMap = new HashMap<>();
 
+    // Готовый объект SHA-256: поиск провайдера дорогой, поэтому делаем его один раз и дальше клонируем
+    private static volatile MessageDigest sha256Prototype;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     /**
      * Загрузить всех пользователей из файла (users.dat), если он существует.
      */
@@ -50,8 +60,9 @@ public class DataManager {
      * они были под рукой.
      */
     public static void saveUsers() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(USERS_FILE))) {
-            oos.writeObject(usersMap);
+        try {
+            byte[] content = serialize(usersMap);
+            ReplicationLog.save(USERS_FILE, ReplicationLog.TYPE_USERS, "", content);
         } catch (IOException e) {
             // Здесь также не вылетаем, а просто предупредим
             System.out.println("Ошибка при сохранении пользователей: " + e.getMessage());
@@ -108,8 +119,7 @@ public class DataManager {
      * Загрузка кошелька конкретного пользователя из файла "wallet_<login>.dat".
      */
     public static Wallet loadWalletForUser(String login) {
-        String walletFileName = "wallet_" + login + ".dat";
-        File f = new File(walletFileName);
+        File f = new File(walletFileName(login));
 
         // Если файла нет, это значит, что у пользователя ещё не создавался кошелёк
         if (!f.exists()) {
@@ -130,30 +140,99 @@ public class DataManager {
      * чтобы его данные были доступны при следующем входе.
      */
     public static void saveWalletForUser(String login, Wallet wallet) {
-        String walletFileName = "wallet_" + login + ".dat";
-
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(walletFileName))) {
-            oos.writeObject(wallet);
+        try {
+            byte[] content = serialize(wallet);
+            ReplicationLog.save(walletFileName(login), ReplicationLog.TYPE_WALLET, login, content);
         } catch (IOException e) {
             System.out.println("Ошибка при сохранении кошелька пользователя '" + login + "': " + e.getMessage());
         }
     }
 
+    /**
+     * Имя файла кошелька пользователя.
+     */
+    static String walletFileName(String login) {
+        return "wallet_" + login + ".dat";
+    }
+
+    /**
+     * Принадлежит ли файл самому приложению (пользователи, кошельки, журнал репликации,
+     * их временные копии). Такие файлы нельзя перезаписывать, например, выгрузкой отчёта.
+     */
+    public static boolean isDataFile(String fileName) {
+        String name = new File(fileName).getName().toLowerCase();
+        if (name.endsWith(".tmp")) {
+            name = name.substring(0, name.length() - 4);
+        }
+        return name.equals(USERS_FILE)
+                || (name.startsWith("wallet_") && name.endsWith(".dat"))
+                || name.equals(ReplicationLog.LOG_FILE)
+                || name.equals(ReplicationLog.LOCK_FILE)
+                || name.equals(ReplicaFollower.OFFSET_FILE);
+    }
+
+    /**
+     * Записать файл целиком через временный файл и переименование,
+     * чтобы читатель никогда не увидел наполовину записанный файл (используется репликой).
+     */
+    static void writeFileAtomically(String fileName, byte[] content) throws IOException {
+        File target = new File(fileName);
+        File tmp = new File(fileName + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            fos.write(content);
+        }
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Сериализовать объект в массив байт (одни и те же байты идут и в файл, и в журнал репликации).
+     */
+    private static byte[] serialize(Object obj) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(obj);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Заранее подготовить хэширование паролей (поиск провайдера SHA-256).
+     * Вызывается в фоне при запуске, пока пользователь вводит логин и пароль.
+     */
+    public static void warmUpPasswordHashing() {
+        sha256();
+    }
+
     /**
      * Вспомогательный метод для хэширования пароля алгоритмом SHA-256.
      */
     private static String hashPassword(String password) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] hashBytes = md.digest(password.getBytes());
+        byte[] hashBytes = sha256().digest(password.getBytes());
 
-            // Преобразуем байты в hex-строку
-            StringBuilder sb = new StringBuilder();
-            for (byte b : hashBytes) {
-                sb.append(String.format("%02x", b));
-            }
-            return sb.toString();
+        // Преобразуем байты в hex-строку (без String.format — он заметно медленнее)
+        StringBuilder sb = new StringBuilder(hashBytes.length * 2);
+        for (byte b : hashBytes) {
+            sb.append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+        }
+        return sb.toString();
+    }
 
+    /**
+     * Новый объект SHA-256: клон подготовленного образца, а если клонирование
+     * не поддерживается — обычный getInstance.
+     */
+    private static MessageDigest sha256() {
+        try {
+            MessageDigest prototype = sha256Prototype;
+            if (prototype == null) {
+                prototype = MessageDigest.getInstance("SHA-256");
+                sha256Prototype = prototype;
+            }
+            try {
+                return (MessageDigest) prototype.clone();
+            } catch (CloneNotSupportedException e) {
+                return MessageDigest.getInstance("SHA-256");
+            }
         } catch (NoSuchAlgorithmException e) {
             // Маловероятно, что это случится, но перехватим и выбросим, чтобы не падать
             throw new RuntimeException("Алгоритм SHA-256 не поддерживается!", e);
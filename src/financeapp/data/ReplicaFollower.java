@@ -0,0 +1,106 @@
+package financeapp.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Реплика (follower): догоняет журнал изменений основного процесса
+ * и раскладывает снимки users.dat и wallet_<login>.dat в свою рабочую папку.
+ *
+ * Место в журнале (поколение и смещение) хранится в файле replica.offset, поэтому после
+ * перезапуска реплика продолжает с того же места, а не читает журнал с начала.
+ * Реплика только читает данные: сама она ничего в журнал не пишет.
+ */
+public class ReplicaFollower {
+    static final String OFFSET_FILE = "replica.offset";
+
+    private final File primaryDir;
+    private ReplicationLog.Position position;
+    private String lastError;
+
+    public ReplicaFollower(String primaryDir) {
+        this.primaryDir = new File(primaryDir);
+        this.position = readPosition();
+    }
+
+    /**
+     * Применить все новые записи журнала.
+     * Если журнал повреждён, сообщаем об этом (один раз на каждую новую ошибку), а не молча ждём.
+     * @return сколько записей применено
+     */
+    public synchronized int catchUp() {
+        final int[] applied = {0};
+        try {
+            ReplicationLog.Position newPosition = ReplicationLog.readFrom(primaryDir, position,
+                    (type, login, content) -> {
+                        if (type == ReplicationLog.TYPE_USERS) {
+                            DataManager.writeFileAtomically(DataManager.USERS_FILE, content);
+                            DataManager.loadUsers();
+                        } else if (type == ReplicationLog.TYPE_WALLET) {
+                            DataManager.writeFileAtomically(DataManager.walletFileName(login), content);
+                        }
+                        applied[0]++;
+                    });
+            if (newPosition.generation != position.generation || newPosition.offset != position.offset) {
+                position = newPosition;
+                writePosition();
+            }
+            lastError = null;
+        } catch (IOException e) {
+            String error = String.valueOf(e.getMessage());
+            if (!error.equals(lastError)) {
+                System.out.println("Ошибка чтения журнала репликации: " + error);
+                lastError = error;
+            }
+        }
+        return applied[0];
+    }
+
+    /**
+     * Отставание реплики от основного процесса в байтах журнала.
+     * Если журнал был сжат, а реплика ещё не перешла на новое поколение, — весь новый журнал.
+     */
+    public long getLagBytes() {
+        ReplicationLog.Position end = ReplicationLog.readEnd(primaryDir);
+        if (end.generation != position.generation) {
+            return Math.max(0, end.offset - ReplicationLog.HEADER_SIZE);
+        }
+        return Math.max(0, end.offset - position.offset);
+    }
+
+    public long getOffset() {
+        return position.offset;
+    }
+
+    public long getGeneration() {
+        return position.generation;
+    }
+
+    /**
+     * Содержимое replica.offset: "поколение смещение".
+     */
+    private ReplicationLog.Position readPosition() {
+        File f = new File(OFFSET_FILE);
+        if (!f.exists()) {
+            return new ReplicationLog.Position(0, 0);
+        }
+        try {
+            String[] parts = new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8).trim().split("\\s+");
+            if (parts.length != 2) {
+                throw new NumberFormatException("ожидается \"поколение смещение\"");
+            }
+            return new ReplicationLog.Position(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+        } catch (IOException | NumberFormatException e) {
+            // Не смогли прочитать смещение — безопасно догоняем с начала (записи идемпотентны)
+            System.out.println("Не удалось прочитать смещение реплики: " + e.getMessage());
+            return new ReplicationLog.Position(0, 0);
+        }
+    }
+
+    private void writePosition() throws IOException {
+        String text = position.generation + " " + position.offset;
+        DataManager.writeFileAtomically(OFFSET_FILE, text.getBytes(StandardCharsets.UTF_8));
+    }
+}
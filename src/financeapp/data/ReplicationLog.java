@@ -0,0 +1,324 @@
+package financeapp.data;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал изменений для репликации (primary -> follower) через общую папку.
+ *
+ * Основной процесс (primary) при каждом сохранении users.dat или wallet_<login>.dat
+ * дописывает в конец файла changes.log запись с полным новым содержимым этого файла.
+ * Реплика (follower) читает журнал с того места, на котором остановилась,
+ * и применяет записи по порядку. Каждая запись — полный снимок файла,
+ * поэтому повторное применение безопасно, а догонять можно с любого места.
+ *
+ * Каждый пользователь запускает свой процесс в той же папке, поэтому порядок обеспечивает
+ * не synchronized, а блокировка файла changes.lock (FileLock): запись файла данных и журнала
+ * идёт под исключительной блокировкой, чтение журнала — под разделяемой.
+ *
+ * Заголовок журнала (HEADER_SIZE байт): int MAGIC, int версия, long поколение,
+ * long размер журнала сразу после последнего сжатия, long размер подтверждённой части.
+ * Запись: int длина тела, long CRC32 тела, затем тело:
+ * byte тип (1 — пользователи, 2 — кошелёк), UTF логин (пустой для пользователей), байты файла.
+ * Запись пишется одним буфером, и только после этого сдвигается подтверждённый размер.
+ * Недописанный хвост (процесс упал посреди записи) следующая запись просто затирает,
+ * а любая нечитаемая запись внутри подтверждённой части — это повреждение, о котором сообщаем.
+ *
+ * Чтобы журнал не рос бесконечно (каждое сохранение — полный снимок кошелька), он сжимается:
+ * когда размер превысит financeapp.replication.max.bytes и вдвое больше размера после
+ * прошлого сжатия, остаётся только последний снимок каждого файла, а номер поколения растёт.
+ * Реплика, увидев новое поколение, читает его с начала (снимки идемпотентны).
+ *
+ * Журнал включается системным свойством financeapp.replication.dir (путь к общей папке).
+ */
+public class ReplicationLog {
+    public static final String DIR_PROPERTY = "financeapp.replication.dir";
+    static final String LOG_FILE = "changes.log";
+    static final String LOCK_FILE = "changes.lock";
+
+    static final byte TYPE_USERS = 1;
+    static final byte TYPE_WALLET = 2;
+
+    private static final int MAGIC = 0x464C4F47; // "FLOG"
+    private static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    private static final int RECORD_HEADER_SIZE = 12;
+    private static final long MAX_BYTES = Long.getLong("financeapp.replication.max.bytes", 64L << 20);
+
+    /**
+     * Обработчик записи журнала при чтении.
+     */
+    interface RecordHandler {
+        void apply(byte type, String login, byte[] content) throws IOException;
+    }
+
+    /**
+     * Место в журнале: поколение и смещение внутри него.
+     */
+    static final class Position {
+        final long generation;
+        final long offset;
+
+        Position(long generation, long offset) {
+            this.generation = generation;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * Заголовок журнала. У пустого (ещё не созданного) журнала поколение 0.
+     */
+    private static final class Header {
+        final long generation;
+        final long baseSize;
+        final long committedSize;
+        final long dataStart;
+
+        Header(long generation, long baseSize, long committedSize, long dataStart) {
+            this.generation = generation;
+            this.baseSize = baseSize;
+            this.committedSize = committedSize;
+            this.dataStart = dataStart;
+        }
+    }
+
+    /**
+     * Сохранить файл данных и, если репликация включена, дописать его снимок в журнал.
+     * Запись файла и журнала идёт под одной блокировкой, поэтому последний снимок в журнале
+     * всегда совпадает с файлом на диске, даже если сохраняют несколько процессов сразу.
+     * Ошибки журнала не мешают сохранению файла.
+     */
+    static synchronized void save(String fileName, byte type, String login, byte[] content) throws IOException {
+        String dir = System.getProperty(DIR_PROPERTY);
+        if (dir == null || dir.isEmpty()) {
+            writeFile(fileName, content);
+            return;
+        }
+
+        try (FileChannel lockChannel = openLock(dir)) {
+            lockChannel.lock(); // блокировка снимается при закрытии канала
+            writeFile(fileName, content);
+            try {
+                append(new File(dir, LOG_FILE).toPath(), type, login, content);
+            } catch (IOException e) {
+                System.out.println("Ошибка записи журнала репликации: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Прочитать записи журнала, начиная с from.
+     * Если журнал с тех пор был сжат (новое поколение), читаем новое поколение с начала.
+     * @return место сразу после последней прочитанной записи
+     * @throws IOException в том числе если внутри подтверждённой части журнала есть повреждённая запись
+     */
+    static Position readFrom(File dir, Position from, RecordHandler handler) throws IOException {
+        File logFile = new File(dir, LOG_FILE);
+        if (!logFile.exists()) {
+            return from;
+        }
+
+        try (FileChannel lockChannel = openLock(dir.getPath())) {
+            lockChannel.lock(0, Long.MAX_VALUE, true);
+            return readLocked(logFile, from, handler);
+        }
+    }
+
+    private static Position readLocked(File logFile, Position from, RecordHandler handler) throws IOException {
+        try (FileChannel log = FileChannel.open(logFile.toPath(), StandardOpenOption.READ)) {
+            Header header = readHeader(log);
+            long position = header.generation == from.generation
+                    ? Math.max(from.offset, header.dataStart) : header.dataStart;
+
+            while (position < header.committedSize) {
+                byte[] body = readRecord(log, position, header.committedSize);
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+                byte type = in.readByte();
+                String login = in.readUTF();
+                byte[] content = in.readAllBytes();
+                handler.apply(type, login, content);
+                position += RECORD_HEADER_SIZE + body.length;
+            }
+            return new Position(header.generation, position);
+        }
+    }
+
+    /**
+     * Конец подтверждённой части журнала (для оценки отставания реплики), без блокировки.
+     */
+    static Position readEnd(File dir) {
+        File logFile = new File(dir, LOG_FILE);
+        if (!logFile.exists()) {
+            return new Position(0, 0);
+        }
+        try (FileChannel log = FileChannel.open(logFile.toPath(), StandardOpenOption.READ)) {
+            Header header = readHeader(log);
+            return new Position(header.generation, header.committedSize);
+        } catch (IOException e) {
+            return new Position(0, 0);
+        }
+    }
+
+    private static void append(Path logPath, byte type, String login, byte[] content) throws IOException {
+        try (FileChannel log = openLog(logPath)) {
+            Header header = readHeader(log);
+            if (header.generation == 0) {
+                // Новый журнал: первое поколение начинается сразу за заголовком
+                header = new Header(1, HEADER_SIZE, HEADER_SIZE, HEADER_SIZE);
+                writeHeader(log, header);
+            }
+
+            ByteArrayOutputStream body = new ByteArrayOutputStream(content.length + 64);
+            DataOutputStream bodyOut = new DataOutputStream(body);
+            bodyOut.writeByte(type);
+            bodyOut.writeUTF(login);
+            bodyOut.write(content);
+            bodyOut.flush();
+            byte[] bodyBytes = body.toByteArray();
+
+            CRC32 crc = new CRC32();
+            crc.update(bodyBytes);
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + bodyBytes.length);
+            record.putInt(bodyBytes.length).putLong(crc.getValue()).put(bodyBytes).flip();
+
+            // Пишем с конца подтверждённой части: недописанный хвост упавшего процесса затирается
+            long position = header.committedSize;
+            while (record.hasRemaining()) {
+                position += log.write(record, position);
+            }
+            log.truncate(position);
+            // Запись должна дойти до диска раньше, чем реплика узнает о ней из заголовка
+            log.force(false);
+            writeHeader(log, new Header(header.generation, header.baseSize, position, HEADER_SIZE));
+            log.force(false);
+
+            if (position > Math.max(MAX_BYTES, 2 * header.baseSize)) {
+                try {
+                    compact(logPath, log, readHeader(log));
+                } catch (IOException e) {
+                    System.out.println("Не удалось сжать журнал репликации: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Сжать журнал: оставить последний снимок каждого файла и начать новое поколение.
+     * Новый журнал пишется во временный файл и атомарно подменяет старый.
+     */
+    private static Header compact(Path logPath, FileChannel log, Header header) throws IOException {
+        // Ключ — тип и логин, значение — {смещение, длина тела} последней записи
+        LinkedHashMap<String, long[]> latest = new LinkedHashMap<>();
+        long position = header.dataStart;
+        while (position < header.committedSize) {
+            byte[] body = readRecord(log, position, header.committedSize);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+            String key = in.readByte() + ":" + in.readUTF();
+            latest.remove(key);
+            latest.put(key, new long[]{position, body.length});
+            position += RECORD_HEADER_SIZE + body.length;
+        }
+
+        Path tmp = logPath.resolveSibling(LOG_FILE + ".tmp");
+        long size = HEADER_SIZE;
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (long[] entry : latest.values()) {
+                long length = RECORD_HEADER_SIZE + entry[1];
+                long copied = 0;
+                while (copied < length) {
+                    copied += log.transferTo(entry[0] + copied, length - copied, out.position(size + copied));
+                }
+                size += length;
+            }
+            Header compacted = new Header(header.generation + 1, size, size, HEADER_SIZE);
+            writeHeader(out, compacted);
+            out.force(true);
+            Files.move(tmp, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return compacted;
+        }
+    }
+
+    /**
+     * Прочитать тело записи по смещению position и проверить её.
+     * Вызывается только для подтверждённой части журнала, поэтому любая ошибка — повреждение.
+     */
+    private static byte[] readRecord(FileChannel log, long position, long end) throws IOException {
+        ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        readFully(log, recordHeader, position);
+        int bodyLength = recordHeader.getInt(0);
+        long expectedCrc = recordHeader.getLong(4);
+        if (bodyLength <= 0 || end - position - RECORD_HEADER_SIZE < bodyLength) {
+            throw new IOException("журнал репликации повреждён: неверная длина записи на смещении " + position);
+        }
+
+        ByteBuffer body = ByteBuffer.allocate(bodyLength);
+        readFully(log, body, position + RECORD_HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        crc.update(body.array());
+        if (crc.getValue() != expectedCrc) {
+            throw new IOException("журнал репликации повреждён: не сходится CRC записи на смещении " + position);
+        }
+        return body.array();
+    }
+
+    private static Header readHeader(FileChannel log) throws IOException {
+        long size = log.size();
+        if (size == 0) {
+            return new Header(0, 0, 0, 0);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+        if (size < HEADER_SIZE) {
+            throw new IOException("журнал репликации повреждён: неполный заголовок");
+        }
+        readFully(log, buffer, 0);
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("журнал репликации повреждён: нет заголовка");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("неизвестная версия журнала репликации: " + buffer.getInt(4));
+        }
+        return new Header(buffer.getLong(8), buffer.getLong(16), buffer.getLong(24), HEADER_SIZE);
+    }
+
+    private static void writeHeader(FileChannel log, Header header) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(header.generation)
+                .putLong(header.baseSize).putLong(header.committedSize).flip();
+        long position = 0;
+        while (buffer.hasRemaining()) {
+            position += log.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel log, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = log.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("журнал репликации обрывается на смещении " + (position + buffer.position()));
+            }
+        }
+    }
+
+    private static FileChannel openLog(Path logPath) throws IOException {
+        return FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static FileChannel openLock(String dir) throws IOException {
+        return FileChannel.open(new File(dir, LOCK_FILE).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static void writeFile(String fileName, byte[] content) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(fileName)) {
+            fos.write(content);
+        }
+    }
+}
@@ -0,0 +1,484 @@
+package financeapp.data;
+
+import financeapp.model.Category;
+import financeapp.model.Operation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Выгрузка операций и статистики по категориям в файлы трёх форматов:
+ * - CSV (одна строка на операцию, с заголовком),
+ * - JSON Lines (один JSON-объект на строку),
+ * - COLUMNAR — компактный двоичный колоночный формат.
+ *
+ * Запись идёт через FileChannel и большой direct-буфер: числа и даты
+ * пишутся в буфер напрямую, без String.format для каждой строки,
+ * а память не зависит от числа операций (буфер сбрасывается на диск по заполнении).
+ *
+ * Колоночный формат (все числа big-endian):
+ *   "FINCOL" + версия (short),
+ *   тип данных (byte: 1 — операции, 2 — категории),
+ *   далее группы строк: int rowCount (> 0), затем колонки группы,
+ *   в конце int 0 — признак конца файла.
+ * Колонки операций: флаги доход/расход (byte[]), суммы в копейках (long[]),
+ * время в секундах UTC (long[]), словарь категорий группы (int + строки) и номера категорий (int[]),
+ * описания (строки). Строка — int длины в байтах UTF-8 и сами байты (длина -1 означает null).
+ * Колонки категорий: название (строка), период (строка), лимит, потрачено за период,
+ * потрачено всего (копейки, long).
+ *
+ * Существующий файл перезаписывается только по явному разрешению (overwrite),
+ * а файлы данных приложения (users.dat, wallet_*.dat и т.п.) — никогда.
+ */
+public class ReportExporter {
+    public enum Format {
+        CSV,
+        JSONL,
+        COLUMNAR;
+
+        /**
+         * Разбор формата по введённой строке ("csv", "jsonl", "col"). Если не распознали — null.
+         */
+        public static Format parse(String text) {
+            String value = text == null ? "" : text.trim().toLowerCase();
+            switch (value) {
+                case "csv":
+                    return CSV;
+                case "json":
+                case "jsonl":
+                    return JSONL;
+                case "col":
+                case "columnar":
+                    return COLUMNAR;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    // Сколько строк кладём в одну колоночную группу (ограничивает расход памяти)
+    private static final int ROW_GROUP_SIZE = 65_536;
+    private static final byte[] COLUMNAR_MAGIC = {'F', 'I', 'N', 'C', 'O', 'L'};
+    private static final short COLUMNAR_VERSION = 1;
+    private static final byte KIND_OPERATIONS = 1;
+    private static final byte KIND_CATEGORIES = 2;
+
+    /**
+     * Выгрузить операции в файл.
+     * @param overwrite можно ли перезаписать существующий файл
+     * @return количество выгруженных операций
+     */
+    public static long exportOperations(Iterable<Operation> operations, Path file, Format format,
+                                        boolean overwrite) throws IOException {
+        try (ChannelWriter out = new ChannelWriter(file, overwrite)) {
+            switch (format) {
+                case CSV:
+                    return writeOperationsCsv(operations, out);
+                case JSONL:
+                    return writeOperationsJson(operations, out);
+                default:
+                    return writeOperationsColumnar(operations, out);
+            }
+        }
+    }
+
+    /**
+     * Выгрузить статистику по категориям (лимит, потрачено за текущий период, потрачено всего).
+     * @param overwrite можно ли перезаписать существующий файл
+     * @return количество выгруженных категорий
+     */
+    public static long exportCategoryStats(Collection<Category> categories, Path file, Format format,
+                                           boolean overwrite) throws IOException {
+        try (ChannelWriter out = new ChannelWriter(file, overwrite)) {
+            switch (format) {
+                case CSV:
+                    out.ascii("category,period,limit,spent_period,spent_total\n");
+                    for (Category cat : categories) {
+                        out.csvString(cat.getName()).ascii(",");
+                        out.csvString(cat.getPeriod().toString()).ascii(",");
+                        out.money(cat.getBudgetLimit()).ascii(",");
+                        out.money(cat.getSpentInCurrentPeriod()).ascii(",");
+                        out.money(cat.getTotalSpent()).ascii("\n");
+                    }
+                    break;
+                case JSONL:
+                    for (Category cat : categories) {
+                        out.ascii("{\"category\":").jsonString(cat.getName());
+                        out.ascii(",\"period\":").jsonString(cat.getPeriod().toString());
+                        out.ascii(",\"limit\":").money(cat.getBudgetLimit());
+                        out.ascii(",\"spent_period\":").money(cat.getSpentInCurrentPeriod());
+                        out.ascii(",\"spent_total\":").money(cat.getTotalSpent()).ascii("}\n");
+                    }
+                    break;
+                default:
+                    out.bytes(COLUMNAR_MAGIC).putShort(COLUMNAR_VERSION).putByte(KIND_CATEGORIES);
+                    if (!categories.isEmpty()) {
+                        out.putInt(categories.size());
+                        for (Category cat : categories) {
+                            out.binaryString(cat.getName());
+                        }
+                        for (Category cat : categories) {
+                            out.binaryString(cat.getPeriod().toString());
+                        }
+                        for (Category cat : categories) {
+                            out.putLong(toCents(cat.getBudgetLimit()));
+                        }
+                        for (Category cat : categories) {
+                            out.putLong(toCents(cat.getSpentInCurrentPeriod()));
+                        }
+                        for (Category cat : categories) {
+                            out.putLong(toCents(cat.getTotalSpent()));
+                        }
+                    }
+                    out.putInt(0);
+            }
+            return categories.size();
+        }
+    }
+
+    private static long writeOperationsCsv(Iterable<Operation> operations, ChannelWriter out) throws IOException {
+        long count = 0;
+        out.ascii("date,type,amount,category,description\n");
+        for (Operation op : operations) {
+            out.dateTime(op.getDateTime()).ascii(op.isIncome() ? ",income," : ",expense,");
+            out.money(op.getAmount()).ascii(",");
+            out.csvString(op.getCategoryName()).ascii(",");
+            out.csvString(op.getDescription()).ascii("\n");
+            count++;
+        }
+        return count;
+    }
+
+    private static long writeOperationsJson(Iterable<Operation> operations, ChannelWriter out) throws IOException {
+        long count = 0;
+        for (Operation op : operations) {
+            out.ascii("{\"date\":\"").dateTime(op.getDateTime());
+            out.ascii(op.isIncome() ? "\",\"type\":\"income\",\"amount\":" : "\",\"type\":\"expense\",\"amount\":");
+            out.money(op.getAmount());
+            out.ascii(",\"category\":").jsonString(op.getCategoryName());
+            out.ascii(",\"description\":").jsonString(op.getDescription()).ascii("}\n");
+            count++;
+        }
+        return count;
+    }
+
+    private static long writeOperationsColumnar(Iterable<Operation> operations, ChannelWriter out) throws IOException {
+        out.bytes(COLUMNAR_MAGIC).putShort(COLUMNAR_VERSION).putByte(KIND_OPERATIONS);
+
+        long count = 0;
+        List<Operation> group = new ArrayList<>(ROW_GROUP_SIZE);
+        for (Operation op : operations) {
+            group.add(op);
+            if (group.size() == ROW_GROUP_SIZE) {
+                writeOperationGroup(group, out);
+                count += group.size();
+                group.clear();
+            }
+        }
+        if (!group.isEmpty()) {
+            writeOperationGroup(group, out);
+            count += group.size();
+        }
+        out.putInt(0);
+        return count;
+    }
+
+    private static void writeOperationGroup(List<Operation> group, ChannelWriter out) throws IOException {
+        out.putInt(group.size());
+        for (Operation op : group) {
+            out.putByte(op.isIncome() ? (byte) 1 : (byte) 0);
+        }
+        for (Operation op : group) {
+            out.putLong(toCents(op.getAmount()));
+        }
+        for (Operation op : group) {
+            out.putLong(op.getDateTime().toEpochSecond(ZoneOffset.UTC));
+        }
+
+        // Словарь категорий группы: категорий мало, а повторяются они в каждой строке
+        HashMap<String, Integer> dictionary = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        int[] ids = new int[group.size()];
+        for (int i = 0; i < group.size(); i++) {
+            String name = group.get(i).getCategoryName();
+            if (name == null) {
+                ids[i] = -1;
+                continue;
+            }
+            Integer id = dictionary.get(name);
+            if (id == null) {
+                id = names.size();
+                dictionary.put(name, id);
+                names.add(name);
+            }
+            ids[i] = id;
+        }
+        out.putInt(names.size());
+        for (String name : names) {
+            out.binaryString(name);
+        }
+        for (int id : ids) {
+            out.putInt(id);
+        }
+
+        for (Operation op : group) {
+            out.binaryString(op.getDescription());
+        }
+    }
+
+    private static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    /**
+     * Обёртка над FileChannel с direct-буфером и методами записи "без лишних объектов".
+     */
+    private static class ChannelWriter implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        ChannelWriter(Path file, boolean overwrite) throws IOException {
+            if (DataManager.isDataFile(file.toString())) {
+                throw new IOException("файл '" + file + "' принадлежит приложению, выберите другое имя");
+            }
+            if (overwrite) {
+                this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+            } else {
+                this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            }
+        }
+
+        ChannelWriter ascii(String s) throws IOException {
+            ensure(s.length());
+            for (int i = 0; i < s.length(); i++) {
+                buffer.put((byte) s.charAt(i));
+            }
+            return this;
+        }
+
+        ChannelWriter bytes(byte[] b) throws IOException {
+            ensure(b.length);
+            buffer.put(b);
+            return this;
+        }
+
+        ChannelWriter putByte(byte b) throws IOException {
+            ensure(1);
+            buffer.put(b);
+            return this;
+        }
+
+        ChannelWriter putShort(short v) throws IOException {
+            ensure(2);
+            buffer.putShort(v);
+            return this;
+        }
+
+        ChannelWriter putInt(int v) throws IOException {
+            ensure(4);
+            buffer.putInt(v);
+            return this;
+        }
+
+        ChannelWriter putLong(long v) throws IOException {
+            ensure(8);
+            buffer.putLong(v);
+            return this;
+        }
+
+        /**
+         * Сумма с двумя знаками после точки: 1234.5 -> "1234.50".
+         */
+        ChannelWriter money(double amount) throws IOException {
+            long cents = toCents(amount);
+            ensure(24);
+            if (cents < 0) {
+                buffer.put((byte) '-');
+                cents = -cents;
+            }
+            digits(cents / 100);
+            buffer.put((byte) '.');
+            long fraction = cents % 100;
+            buffer.put((byte) ('0' + fraction / 10));
+            buffer.put((byte) ('0' + fraction % 10));
+            return this;
+        }
+
+        /**
+         * Дата в формате ISO: 2024-01-31T12:00:00.
+         */
+        ChannelWriter dateTime(LocalDateTime dt) throws IOException {
+            ensure(19);
+            padded(dt.getYear(), 4);
+            buffer.put((byte) '-');
+            padded(dt.getMonthValue(), 2);
+            buffer.put((byte) '-');
+            padded(dt.getDayOfMonth(), 2);
+            buffer.put((byte) 'T');
+            padded(dt.getHour(), 2);
+            buffer.put((byte) ':');
+            padded(dt.getMinute(), 2);
+            buffer.put((byte) ':');
+            padded(dt.getSecond(), 2);
+            return this;
+        }
+
+        /**
+         * Строка для CSV: всегда в кавычках, кавычки внутри удваиваются. null — пустое поле.
+         */
+        ChannelWriter csvString(String s) throws IOException {
+            if (s == null) {
+                return this;
+            }
+            putByteEnsured('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '"') {
+                    putByteEnsured('"');
+                }
+                i = utf8Char(s, i);
+            }
+            putByteEnsured('"');
+            return this;
+        }
+
+        /**
+         * Строка JSON с экранированием кавычек, обратной косой черты и управляющих символов.
+         */
+        ChannelWriter jsonString(String s) throws IOException {
+            if (s == null) {
+                return ascii("null");
+            }
+            putByteEnsured('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '"' || c == '\\') {
+                    putByteEnsured('\\');
+                    putByteEnsured(c);
+                } else if (c < 0x20) {
+                    ascii("\\u00");
+                    putByteEnsured(Character.forDigit(c >> 4, 16));
+                    putByteEnsured(Character.forDigit(c & 0xF, 16));
+                } else {
+                    i = utf8Char(s, i);
+                }
+            }
+            putByteEnsured('"');
+            return this;
+        }
+
+        /**
+         * Строка для двоичного формата: длина в байтах UTF-8, затем байты.
+         */
+        ChannelWriter binaryString(String s) throws IOException {
+            if (s == null) {
+                return putInt(-1);
+            }
+            putInt(utf8Length(s));
+            for (int i = 0; i < s.length(); i++) {
+                i = utf8Char(s, i);
+            }
+            return this;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+
+        /**
+         * Записать символ s[i] в UTF-8. Для суррогатной пары пишем оба char и возвращаем индекс второго.
+         */
+        private int utf8Char(String s, int i) throws IOException {
+            ensure(4);
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(i + 1));
+                buffer.put((byte) (0xF0 | (cp >> 18)));
+                buffer.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (cp & 0x3F)));
+                return i + 1;
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+            return i;
+        }
+
+        private static int utf8Length(String s) {
+            int length = 0;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    length += 1;
+                } else if (c < 0x800) {
+                    length += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    length += 4;
+                    i++;
+                } else {
+                    length += 3;
+                }
+            }
+            return length;
+        }
+
+        private void putByteEnsured(char c) throws IOException {
+            ensure(1);
+            buffer.put((byte) c);
+        }
+
+        private void digits(long value) {
+            if (value >= 10) {
+                digits(value / 10);
+            }
+            buffer.put((byte) ('0' + value % 10));
+        }
+
+        private void padded(int value, int width) {
+            int divisor = 1;
+            for (int i = 1; i < width; i++) {
+                divisor *= 10;
+            }
+            for (; divisor > 0; divisor /= 10) {
+                buffer.put((byte) ('0' + (value / divisor) % 10));
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
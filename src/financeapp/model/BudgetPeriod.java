@@ -0,0 +1,129 @@
+package financeapp.model;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Бюджетный период категории: месяц, неделя или произвольное число дней.
+ * Каждой дате соответствует номер периода (index), по которому категория
+ * понимает, в какую "ячейку" счётчиков класть расход.
+ * Номер считается по самой дате, без просмотра истории операций.
+ */
+public class BudgetPeriod implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public enum Type {
+        MONTHLY,
+        WEEKLY,
+        CUSTOM_DAYS
+    }
+
+    private final Type type;
+    private final int lengthDays; // используется только для CUSTOM_DAYS
+
+    private BudgetPeriod(Type type, int lengthDays) {
+        this.type = type;
+        this.lengthDays = lengthDays;
+    }
+
+    public static BudgetPeriod monthly() {
+        return new BudgetPeriod(Type.MONTHLY, 0);
+    }
+
+    public static BudgetPeriod weekly() {
+        return new BudgetPeriod(Type.WEEKLY, 7);
+    }
+
+    /**
+     * Произвольный период в днях (отсчёт от 1970-01-01).
+     */
+    public static BudgetPeriod days(int lengthDays) {
+        if (lengthDays <= 0) {
+            throw new IllegalArgumentException("Длина периода должна быть положительной!");
+        }
+        return new BudgetPeriod(Type.CUSTOM_DAYS, lengthDays);
+    }
+
+    /**
+     * Разбор строки, введённой пользователем: "месяц", "неделя" или число дней.
+     * Пустая строка означает месяц.
+     */
+    public static BudgetPeriod parse(String text) {
+        String value = text == null ? "" : text.trim().toLowerCase();
+        if (value.isEmpty() || value.equals("месяц") || value.equals("m")) {
+            return monthly();
+        }
+        if (value.equals("неделя") || value.equals("w")) {
+            return weekly();
+        }
+        try {
+            return days(Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Неизвестный период: " + text);
+        }
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getLengthDays() {
+        return lengthDays;
+    }
+
+    /**
+     * Номер периода, в который попадает дата.
+     */
+    public long indexOf(LocalDate date) {
+        switch (type) {
+            case MONTHLY:
+                return date.getYear() * 12L + (date.getMonthValue() - 1);
+            case WEEKLY:
+                // 1970-01-01 — четверг, сдвигаем на 3 дня, чтобы неделя начиналась с понедельника
+                return Math.floorDiv(date.toEpochDay() + 3, 7);
+            default:
+                return Math.floorDiv(date.toEpochDay(), lengthDays);
+        }
+    }
+
+    /**
+     * Первый день периода с заданным номером.
+     */
+    public LocalDate startOf(long index) {
+        switch (type) {
+            case MONTHLY:
+                return LocalDate.of((int) Math.floorDiv(index, 12), Math.floorMod(index, 12) + 1, 1);
+            case WEEKLY:
+                return LocalDate.ofEpochDay(index * 7 - 3);
+            default:
+                return LocalDate.ofEpochDay(index * lengthDays);
+        }
+    }
+
+    /**
+     * Дата через count периодов после заданной (нужно для регулярных операций).
+     * Считаем всегда от исходной даты, чтобы "31-е число" не съезжало после февраля.
+     */
+    public LocalDate plus(LocalDate date, long count) {
+        switch (type) {
+            case MONTHLY:
+                return date.plusMonths(count);
+            case WEEKLY:
+                return date.plusWeeks(count);
+            default:
+                return date.plusDays(count * lengthDays);
+        }
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case MONTHLY:
+                return "месяц";
+            case WEEKLY:
+                return "неделя";
+            default:
+                return lengthDays + " дн.";
+        }
+    }
+}
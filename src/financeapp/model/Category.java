@@ -1,14 +1,25 @@
 package financeapp.model;
 
 import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.Arrays;
 
 /**
  * Категория расходов.
  * Храним:
  * - название (name),
  * - бюджетный лимит (budgetLimit),
- * - общую потраченную сумму (totalSpent).
+ * - общую потраченную сумму (totalSpent),
+ * - бюджетный период (period) и "кольцо" счётчиков расходов по периодам.
  *
+ * Кольцо устроено так: номер периода (см. BudgetPeriod.indexOf) по модулю PERIOD_SLOTS
+ * даёт ячейку, а в periodIndexes лежит номер периода, которому ячейка сейчас принадлежит.
+ * Если при обращении номер не совпал — ячейка относится к старому периоду, и мы её обнуляем.
+ * Так переход на новый месяц происходит лениво, за O(1), без пересчёта истории,
+ * а последние PERIOD_SLOTS периодов остаются доступны для просмотра.
+ *
+ * Кольцо заполняется по истории операций только в двух случаях: категория пришла из старого
+ * файла без кольца или у неё сменился период. Это разовый проход, а не пересчёт на каждом переходе.
  */
 public class Category implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -17,10 +28,20 @@ public class Category implements Serializable {
     private double budgetLimit;
     private double totalSpent;
 
+    // Сколько последних периодов храним в кольце
+    private static final int PERIOD_SLOTS = 24;
+
+    // Поля ниже могут отсутствовать в старых файлах кошельков, поэтому создаём их лениво
+    private BudgetPeriod period;
+    private long[] periodIndexes;
+    private double[] periodSpent;
+
     public Category(String name, double budgetLimit) {
         this.name = name;
         this.budgetLimit = budgetLimit;
         this.totalSpent = 0.0;
+        this.period = BudgetPeriod.monthly();
+        resetPeriods();
     }
 
     public String getName() {
@@ -43,7 +64,130 @@ public class Category implements Serializable {
      * При добавлении расходов мы увеличиваем totalSpent на заданную сумму.
      */
     public void addSpent(double amount) {
+        addSpent(amount, LocalDate.now());
+    }
+
+    /**
+     * Расход с конкретной датой: кроме общей суммы, увеличиваем счётчик того периода,
+     * в который попадает дата. Если дата старше, чем хранит кольцо, учитываем её только в totalSpent.
+     */
+    public void addSpent(double amount, LocalDate date) {
         this.totalSpent += amount;
+
+        long index = getPeriod().indexOf(date);
+        int slot = slotFor(index);
+        if (slot >= 0) {
+            periodSpent[slot] += amount;
+        }
+    }
+
+    public BudgetPeriod getPeriod() {
+        if (period == null) {
+            period = BudgetPeriod.monthly();
+        }
+        return period;
+    }
+
+    /**
+     * Сменить бюджетный период. Старые счётчики считались в другой "сетке", поэтому кольцо
+     * обнуляется, а заполняет его заново по истории кошелёк (см. Wallet.setCategoryPeriod).
+     * totalSpent не меняется.
+     */
+    void setPeriod(BudgetPeriod newPeriod) {
+        this.period = newPeriod;
+        resetPeriods();
+    }
+
+    /**
+     * Категория загружена из старого файла, и кольца счётчиков у неё ещё нет.
+     */
+    boolean needsPeriodBackfill() {
+        return periodIndexes == null || periodSpent == null;
+    }
+
+    /**
+     * Начать заполнение кольца по истории: дальше для каждой операции вызывается replay.
+     */
+    void beginPeriodBackfill() {
+        resetPeriods();
+    }
+
+    /**
+     * Учесть операцию из истории в счётчике её периода (totalSpent уже содержит эту сумму).
+     */
+    void replay(Operation op) {
+        if (op.isIncome() || !name.equals(op.getCategoryName())) {
+            return;
+        }
+        int slot = slotFor(getPeriod().indexOf(op.getDateTime().toLocalDate()));
+        if (slot >= 0) {
+            periodSpent[slot] += op.getAmount();
+        }
+    }
+
+    /**
+     * Учесть сумму из сводки холодного сегмента, целиком попавшего в период даты date.
+     */
+    void replaySpent(double amount, LocalDate date) {
+        int slot = slotFor(getPeriod().indexOf(date));
+        if (slot >= 0) {
+            periodSpent[slot] += amount;
+        }
+    }
+
+    /**
+     * Сколько потрачено в текущем периоде — именно с этой суммой сравнивается лимит.
+     */
+    public double getSpentInCurrentPeriod() {
+        return getSpentInPeriod(LocalDate.now());
+    }
+
+    /**
+     * Сколько потрачено в периоде, в который попадает дата.
+     * Для периодов, которые уже вытеснены из кольца (или ещё не наступили), вернём 0.
+     */
+    public double getSpentInPeriod(LocalDate date) {
+        long index = getPeriod().indexOf(date);
+        ensurePeriods();
+        int slot = (int) Math.floorMod(index, (long) PERIOD_SLOTS);
+        return periodIndexes[slot] == index ? periodSpent[slot] : 0.0;
+    }
+
+    /**
+     * Дата начала текущего периода (для вывода статистики).
+     */
+    public LocalDate getCurrentPeriodStart() {
+        return getPeriod().startOf(getPeriod().indexOf(LocalDate.now()));
+    }
+
+    /**
+     * Находим ячейку для периода index, при необходимости "прокручивая" кольцо.
+     * Возвращает -1, если период слишком старый и его ячейка уже занята более новым.
+     */
+    private int slotFor(long index) {
+        ensurePeriods();
+        int slot = (int) Math.floorMod(index, (long) PERIOD_SLOTS);
+        if (periodIndexes[slot] == index) {
+            return slot;
+        }
+        if (periodIndexes[slot] > index) {
+            return -1;
+        }
+        periodIndexes[slot] = index;
+        periodSpent[slot] = 0.0;
+        return slot;
+    }
+
+    private void ensurePeriods() {
+        if (periodIndexes == null || periodSpent == null) {
+            resetPeriods();
+        }
+    }
+
+    private void resetPeriods() {
+        periodIndexes = new long[PERIOD_SLOTS];
+        Arrays.fill(periodIndexes, Long.MIN_VALUE);
+        periodSpent = new double[PERIOD_SLOTS];
     }
 
 }
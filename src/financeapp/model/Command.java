@@ -13,6 +13,13 @@ public enum Command {
     SHOW_CATEGORY_STATS("6"),
     TRANSFER_FUNDS("7"),
     EXIT("8"),
+    SET_CATEGORY_PERIOD("9"),
+    ADD_RECURRING_OPERATION("10"),
+    LIST_RECURRING_OPERATIONS("11"),
+    SEARCH_OPERATIONS("12"),
+    ADD_CATEGORY_RULE("13"),
+    EXPORT_DATA("14"),
+    VERIFY_LEDGER("15"),
     UNKNOWN("");
 
     private final String code;
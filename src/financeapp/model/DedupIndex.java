@@ -0,0 +1,156 @@
+package financeapp.model;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Индекс ключей идемпотентности: помогает не провести одну и ту же операцию дважды
+ * (повторный запрос, повторный импорт выписки и т.п.).
+ *
+ * Устроен в два уровня:
+ * - фильтр Блума — быстрый ответ "такого ключа точно не было" для почти всех новых ключей;
+ * - точный набор ключей (LinkedHashMap в порядке добавления) со временем добавления.
+ *
+ * Ключи живут TTL_SECONDS секунд. Так как срок у всех одинаковый, порядок добавления
+ * совпадает с порядком истечения, и устаревшие ключи снимаются с начала списка.
+ * Количество ключей ограничено MAX_KEYS: при переполнении вытесняются самые старые.
+ * Срок жизни и лимит берутся из свойств при запуске, а не хранятся в файле кошелька,
+ * поэтому их изменение действует и на уже существующие кошельки.
+ * Фильтр Блума растёт вместе с числом ключей и перестраивается, когда из него
+ * "ушло" слишком много ключей (удалять биты из фильтра Блума нельзя).
+ */
+public class DedupIndex implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int BITS_PER_KEY = 10;
+    private static final int HASH_COUNT = 7;
+    private static final int MIN_CAPACITY = 1024;
+
+    // Сколько живут ключи идемпотентности и сколько их храним максимум
+    private static final long TTL_SECONDS = Long.getLong("financeapp.dedup.ttl.days", 30) * 24 * 3600;
+    private static final int MAX_KEYS = Integer.getInteger("financeapp.dedup.max.keys", 1_000_000);
+
+    // Время добавления ключа в секундах
+    private final LinkedHashMap<String, Long> addedAt;
+
+    private long[] bloom;
+    private int bloomCapacity;
+    private int removedSinceRebuild;
+
+    public DedupIndex() {
+        this.addedAt = new LinkedHashMap<>();
+        rebuildBloom(MIN_CAPACITY);
+    }
+
+    /**
+     * Встречался ли ключ (и ещё не истёк).
+     * @param nowSeconds текущее время в секундах
+     */
+    public boolean contains(String key, long nowSeconds) {
+        purgeExpired(nowSeconds);
+        if (!mightContain(key)) {
+            return false;
+        }
+        return addedAt.containsKey(key);
+    }
+
+    /**
+     * Запомнить ключ проведённой операции.
+     */
+    public void register(String key, long nowSeconds) {
+        purgeExpired(nowSeconds);
+        // Повторная регистрация продлевает срок: ключ переезжает в конец списка
+        if (addedAt.remove(key) != null) {
+            addedAt.put(key, nowSeconds);
+            return;
+        }
+        addedAt.put(key, nowSeconds);
+        trimToMaxKeys();
+
+        if (addedAt.size() > bloomCapacity) {
+            rebuildBloom(Math.min(bloomCapacity * 2, Math.max(MAX_KEYS, MIN_CAPACITY)));
+        } else {
+            addToBloom(key);
+        }
+    }
+
+    public int size() {
+        return addedAt.size();
+    }
+
+    /**
+     * Снять с начала списка все истёкшие ключи (и лишние, если лимит уменьшили).
+     */
+    private void purgeExpired(long nowSeconds) {
+        Iterator<Map.Entry<String, Long>> it = addedAt.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            if (entry.getValue() + TTL_SECONDS > nowSeconds) {
+                break;
+            }
+            it.remove();
+            removedSinceRebuild++;
+        }
+        trimToMaxKeys();
+
+        // Много ушедших ключей — фильтр начинает чаще ошибаться, строим его заново
+        if (removedSinceRebuild > bloomCapacity / 2) {
+            rebuildBloom(bloomCapacity);
+        }
+    }
+
+    private void trimToMaxKeys() {
+        Iterator<String> oldest = addedAt.keySet().iterator();
+        while (addedAt.size() > MAX_KEYS) {
+            oldest.next();
+            oldest.remove();
+            removedSinceRebuild++;
+        }
+    }
+
+    private void rebuildBloom(int capacity) {
+        bloomCapacity = Math.max(capacity, MIN_CAPACITY);
+        bloom = new long[(bloomCapacity * BITS_PER_KEY + 63) / 64];
+        removedSinceRebuild = 0;
+        for (String key : addedAt.keySet()) {
+            addToBloom(key);
+        }
+    }
+
+    private void addToBloom(String key) {
+        long bits = bloom.length * 64L;
+        int h1 = key.hashCode();
+        int h2 = mix(h1);
+        for (int i = 0; i < HASH_COUNT; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bits);
+            bloom[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private boolean mightContain(String key) {
+        long bits = bloom.length * 64L;
+        int h1 = key.hashCode();
+        int h2 = mix(h1);
+        for (int i = 0; i < HASH_COUNT; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bits);
+            if ((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Второй хэш для двойного хэширования (перемешивание битов, как в MurmurHash3).
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h | 1;
+    }
+}
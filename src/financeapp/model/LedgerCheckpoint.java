@@ -0,0 +1,46 @@
+package financeapp.model;
+
+import java.io.Serializable;
+
+/**
+ * Контрольная точка журнала операций.
+ * Храним:
+ * - сколько операций покрыто (operationCount),
+ * - хэш последней из них (chainHash),
+ * - корень дерева Меркла по хэшам операций блока с прошлой контрольной точки (merkleRoot),
+ * - баланс, получившийся после этих операций (balance).
+ *
+ * Быстрая проверка начинается с последней контрольной точки, а не с первой операции,
+ * а полная проверка сверяет блоки между точками независимо друг от друга (параллельно).
+ */
+public class LedgerCheckpoint implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int operationCount;
+    private final byte[] chainHash;
+    private final byte[] merkleRoot;
+    private final double balance;
+
+    public LedgerCheckpoint(int operationCount, byte[] chainHash, byte[] merkleRoot, double balance) {
+        this.operationCount = operationCount;
+        this.chainHash = chainHash;
+        this.merkleRoot = merkleRoot;
+        this.balance = balance;
+    }
+
+    public int getOperationCount() {
+        return operationCount;
+    }
+
+    public byte[] getChainHash() {
+        return chainHash;
+    }
+
+    public byte[] getMerkleRoot() {
+        return merkleRoot;
+    }
+
+    public double getBalance() {
+        return balance;
+    }
+}
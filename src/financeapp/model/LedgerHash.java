@@ -0,0 +1,107 @@
+package financeapp.model;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Хэши журнала операций (SHA-256).
+ *
+ * Хэш операции считается от хэша предыдущей операции и всех её полей,
+ * поэтому изменение любой старой операции ломает всю цепочку после неё.
+ * MessageDigest у каждого потока свой — проверку можно вести параллельно.
+ */
+public final class LedgerHash {
+    /** "Предыдущий хэш" для самой первой операции кошелька. */
+    public static final byte[] GENESIS = new byte[32];
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Алгоритм SHA-256 не поддерживается!", e);
+        }
+    });
+
+    private LedgerHash() {
+    }
+
+    /**
+     * Хэш операции при заданном хэше предшественника.
+     */
+    public static byte[] compute(byte[] prevHash, Operation op) {
+        MessageDigest md = DIGEST.get();
+        md.reset();
+        md.update(prevHash);
+        md.update(op.isIncome() ? (byte) 1 : (byte) 0);
+        updateLong(md, Double.doubleToLongBits(op.getAmount()));
+        updateLong(md, op.getDateTime().toEpochSecond(ZoneOffset.UTC));
+        updateLong(md, op.getDateTime().getNano());
+        updateString(md, op.getDescription());
+        updateString(md, op.getCategoryName());
+        updateString(md, op.getIdempotencyKey());
+        byte[] counterpart = op.getCounterpartHash();
+        md.update(counterpart == null ? (byte) 0 : (byte) 1);
+        if (counterpart != null) {
+            md.update(counterpart);
+        }
+        return md.digest();
+    }
+
+    /**
+     * Корень дерева Меркла по списку хэшей (нечётный последний узел дублируется).
+     */
+    public static byte[] merkleRoot(List<byte[]> leaves) {
+        if (leaves.isEmpty()) {
+            return GENESIS;
+        }
+        MessageDigest md = DIGEST.get();
+        List<byte[]> level = leaves;
+        while (level.size() > 1) {
+            List<byte[]> next = new ArrayList<>((level.size() + 1) / 2);
+            for (int i = 0; i < level.size(); i += 2) {
+                byte[] left = level.get(i);
+                byte[] right = i + 1 < level.size() ? level.get(i + 1) : left;
+                md.reset();
+                md.update(left);
+                md.update(right);
+                next.add(md.digest());
+            }
+            level = next;
+        }
+        return level.get(0);
+    }
+
+    /**
+     * Короткая hex-запись хэша для сообщений (первые 8 байт).
+     */
+    public static String shortHex(byte[] hash) {
+        if (hash == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(16);
+        for (int i = 0; i < Math.min(8, hash.length); i++) {
+            sb.append(Character.forDigit((hash[i] >> 4) & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static void updateLong(MessageDigest md, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            md.update((byte) (value >>> shift));
+        }
+    }
+
+    private static void updateString(MessageDigest md, String s) {
+        if (s == null) {
+            updateLong(md, -1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        updateLong(md, bytes.length);
+        md.update(bytes);
+    }
+}
@@ -11,7 +11,10 @@ import java.time.format.DateTimeFormatter;
  * - описание (description),
  * - сумму (amount),
  * - дату/время (dateTime),
- * - необязательное поле категории (categoryName), если это расход.
+ * - необязательное поле категории (categoryName), если это расход,
+ * - необязательный ключ идемпотентности (idempotencyKey), переданный клиентом,
+ * - звено журнала: хэш предыдущей операции (prevHash) и собственный хэш (hash),
+ *   а для дохода по переводу — хэш парной операции расхода у отправителя (counterpartHash).
  */
 public class Operation implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -21,13 +24,44 @@ public class Operation implements Serializable {
     private final double amount;
     private final LocalDateTime dateTime;
     private final String categoryName; // null или пустая строка, если это доход
+    private final String idempotencyKey; // null, если клиент ключ не передал
+    private final byte[] counterpartHash; // null, если это не вторая половина перевода
+    // Заполняются кошельком при добавлении операции в журнал (см. chain)
+    private byte[] prevHash;
+    private byte[] hash;
 
     public Operation(boolean isIncome, String description, double amount, String categoryName) {
+        this(isIncome, description, amount, categoryName, LocalDateTime.now());
+    }
+
+    /**
+     * Операция с явно заданной датой (например, пропущенное срабатывание регулярной операции).
+     */
+    public Operation(boolean isIncome, String description, double amount, String categoryName,
+                     LocalDateTime dateTime) {
+        this(isIncome, description, amount, categoryName, dateTime, null);
+    }
+
+    /**
+     * Операция с ключом идемпотентности (для защиты от повторного проведения).
+     */
+    public Operation(boolean isIncome, String description, double amount, String categoryName,
+                     LocalDateTime dateTime, String idempotencyKey) {
+        this(isIncome, description, amount, categoryName, dateTime, idempotencyKey, null);
+    }
+
+    /**
+     * Операция со ссылкой на парную операцию (для второй половины перевода).
+     */
+    public Operation(boolean isIncome, String description, double amount, String categoryName,
+                     LocalDateTime dateTime, String idempotencyKey, byte[] counterpartHash) {
         this.isIncome = isIncome;
         this.description = description;
         this.amount = amount;
-        this.dateTime = LocalDateTime.now();
+        this.dateTime = dateTime;
         this.categoryName = categoryName;
+        this.idempotencyKey = idempotencyKey;
+        this.counterpartHash = counterpartHash;
     }
 
     public boolean isIncome() {
@@ -50,6 +84,34 @@ public class Operation implements Serializable {
         return categoryName;
     }
 
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public byte[] getCounterpartHash() {
+        return counterpartHash;
+    }
+
+    public byte[] getPrevHash() {
+        return prevHash;
+    }
+
+    public byte[] getHash() {
+        return hash;
+    }
+
+    /**
+     * Встроить операцию в цепочку журнала после операции с хэшем prev.
+     * Делается один раз, когда операция попадает в кошелёк.
+     */
+    public void chain(byte[] prev) {
+        if (hash != null) {
+            throw new IllegalStateException("Операция уже добавлена в журнал");
+        }
+        this.prevHash = prev;
+        this.hash = LedgerHash.compute(prev, this);
+    }
+
     @Override
     public String toString() {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
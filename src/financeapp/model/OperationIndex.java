@@ -0,0 +1,159 @@
+package financeapp.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Инвертированный индекс по описаниям операций для полнотекстового поиска.
+ *
+ * Для каждого слова (точнее, его основы после простого стемминга) храним
+ * отсортированный список номеров операций (postings), в описании которых оно встречается.
+ * Номер операции — её порядковый номер в истории кошелька.
+ * Операции только добавляются в конец, поэтому списки пополняются без сортировки,
+ * а поиск по нескольким словам — это пересечение отсортированных массивов.
+ *
+ * Индекс сериализуется вместе с кошельком, так что после загрузки его не нужно строить заново.
+ */
+public class OperationIndex implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // Окончания русских слов, от самых длинных к самым коротким
+    private static final String[] RU_ENDINGS = {
+            "иями", "ями", "ами", "иях", "иям", "ией", "ием", "ого", "его", "ому", "ему", "ыми", "ими",
+            "ая", "яя", "ое", "ее", "ые", "ие", "ой", "ей", "ий", "ый", "ом", "ем", "ам", "ям",
+            "ах", "ях", "ов", "ев", "ую", "юю", "ия", "ья", "ью", "ию",
+            "а", "я", "о", "е", "ы", "и", "у", "ю", "ь", "й"
+    };
+
+    // Основа не должна становиться короче, иначе разные слова начнут совпадать
+    private static final int MIN_STEM_LENGTH = 3;
+
+    private final HashMap<String, Postings> postings = new HashMap<>();
+    private int indexedCount;
+
+    /**
+     * Сколько операций уже проиндексировано (номер следующей операции).
+     */
+    public int getIndexedCount() {
+        return indexedCount;
+    }
+
+    /**
+     * Добавить в индекс очередную операцию. Номер операции — indexedCount.
+     */
+    public void add(Operation op) {
+        int id = indexedCount++;
+        if (op.getDescription() == null) {
+            return;
+        }
+        for (String term : analyze(op.getDescription())) {
+            postings.computeIfAbsent(term, k -> new Postings()).add(id);
+        }
+    }
+
+    /**
+     * Найти операции, в описании которых есть все слова запроса.
+     * @return отсортированные по возрастанию номера операций
+     */
+    public int[] search(String query) {
+        Set<String> terms = analyze(query);
+        if (terms.isEmpty()) {
+            return new int[0];
+        }
+
+        // Начинаем с самого короткого списка — так пересечение дешевле
+        List<Postings> lists = new ArrayList<>();
+        for (String term : terms) {
+            Postings p = postings.get(term);
+            if (p == null) {
+                return new int[0];
+            }
+            lists.add(p);
+        }
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+
+        int[] result = Arrays.copyOf(lists.get(0).ids, lists.get(0).size);
+        int resultSize = result.length;
+        for (int i = 1; i < lists.size() && resultSize > 0; i++) {
+            resultSize = intersect(result, resultSize, lists.get(i));
+        }
+        return Arrays.copyOf(result, resultSize);
+    }
+
+    /**
+     * Разбить текст на слова и привести их к основам.
+     * Используем LinkedHashSet, чтобы одно слово в описании не давало повторов в postings.
+     */
+    static Set<String> analyze(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                c = Character.toLowerCase(c);
+                word.append(c == 'ё' ? 'е' : c);
+            } else if (word.length() > 0) {
+                terms.add(stem(word.toString()));
+                word.setLength(0);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Очень простой стемминг: отрезаем самое длинное подходящее окончание,
+     * если после этого остаётся не меньше MIN_STEM_LENGTH символов.
+     * Для латиницы и чисел слово не меняется.
+     */
+    static String stem(String word) {
+        for (String ending : RU_ENDINGS) {
+            if (word.length() - ending.length() >= MIN_STEM_LENGTH && word.endsWith(ending)) {
+                return word.substring(0, word.length() - ending.length());
+            }
+        }
+        return word;
+    }
+
+    /**
+     * Оставить в result[0..size) только номера, которые есть в other. Возвращает новый размер.
+     */
+    private static int intersect(int[] result, int size, Postings other) {
+        int i = 0;
+        int j = 0;
+        int out = 0;
+        while (i < size && j < other.size) {
+            if (result[i] == other.ids[j]) {
+                result[out++] = result[i];
+                i++;
+                j++;
+            } else if (result[i] < other.ids[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Растущий массив номеров операций (без упаковки в Integer).
+     */
+    private static class Postings implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+}
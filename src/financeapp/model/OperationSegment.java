@@ -0,0 +1,312 @@
+package financeapp.model;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * "Холодный" сегмент истории: неизменяемый сжатый блок старых операций.
+ *
+ * Внутри сегмента операции хранятся компактно:
+ * - время — разница с предыдущей операцией в секундах (varint) плюс наносекунды,
+ * - категории — номер в словаре сегмента вместо строки,
+ * - описания и ключи идемпотентности — байты UTF-8.
+ * Хэши журнала операций внутри не хранятся. Обычная распаковка (decode) их и не считает:
+ * поиску, статистике и выгрузке хэши не нужны. Проверка и построение журнала распаковывают
+ * через decodeChained — хэши заново вычисляются от хэша, предшествующего сегменту (headPrevHash),
+ * а итог сверяется с tailHash.
+ * Весь блок затем сжимается Deflate (LZ77 + Хаффман), что хорошо ужимает повторяющиеся описания.
+ *
+ * Рядом с данными лежит готовая сводка (количество, даты, суммы доходов/расходов,
+ * расходы по категориям), так что итоги считаются без распаковки.
+ */
+public class OperationSegment implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int count;
+    private final LocalDateTime firstDate;
+    private final LocalDateTime lastDate;
+    private final double totalIncome;
+    private final double totalExpense;
+    private final HashMap<String, Double> expenseByCategory;
+    private final int rawLength;
+    private final byte[] data;
+    // Начало и конец цепочки хэшей сегмента (в старых сегментах проставляются при первом построении журнала)
+    private byte[] headPrevHash;
+    private byte[] tailHash;
+
+    private OperationSegment(int count, LocalDateTime firstDate, LocalDateTime lastDate,
+                             double totalIncome, double totalExpense,
+                             HashMap<String, Double> expenseByCategory, int rawLength, byte[] data) {
+        this.count = count;
+        this.firstDate = firstDate;
+        this.lastDate = lastDate;
+        this.totalIncome = totalIncome;
+        this.totalExpense = totalExpense;
+        this.expenseByCategory = expenseByCategory;
+        this.rawLength = rawLength;
+        this.data = data;
+    }
+
+    /**
+     * Упаковать список операций в сегмент. Операции уже должны быть встроены в журнал.
+     */
+    public static OperationSegment seal(List<Operation> ops) {
+        double income = 0.0;
+        double expense = 0.0;
+        HashMap<String, Double> byCategory = new HashMap<>();
+        HashMap<String, Integer> dictionary = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        LocalDateTime first = null;
+        LocalDateTime last = null;
+
+        for (Operation op : ops) {
+            if (op.isIncome()) {
+                income += op.getAmount();
+            } else {
+                expense += op.getAmount();
+                if (op.getCategoryName() != null) {
+                    byCategory.merge(op.getCategoryName(), op.getAmount(), Double::sum);
+                }
+            }
+            if (op.getCategoryName() != null && !dictionary.containsKey(op.getCategoryName())) {
+                dictionary.put(op.getCategoryName(), names.size());
+                names.add(op.getCategoryName());
+            }
+            if (first == null || op.getDateTime().isBefore(first)) {
+                first = op.getDateTime();
+            }
+            if (last == null || op.getDateTime().isAfter(last)) {
+                last = op.getDateTime();
+            }
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeVarint(out, names.size());
+            for (String name : names) {
+                writeString(out, name);
+            }
+
+            long previousSecond = 0;
+            for (Operation op : ops) {
+                long second = op.getDateTime().toEpochSecond(ZoneOffset.UTC);
+                out.writeBoolean(op.isIncome());
+                out.writeDouble(op.getAmount());
+                writeVarint(out, zigzag(second - previousSecond));
+                writeVarint(out, op.getDateTime().getNano());
+                String category = op.getCategoryName();
+                writeVarint(out, category == null ? 0 : dictionary.get(category) + 1);
+                writeString(out, op.getDescription());
+                writeString(out, op.getIdempotencyKey());
+                writeBytes(out, op.getCounterpartHash());
+                previousSecond = second;
+            }
+            out.flush();
+
+            byte[] raw = bytes.toByteArray();
+            OperationSegment segment = new OperationSegment(ops.size(), first, last, income, expense, byCategory,
+                    raw.length, compress(raw));
+            segment.attachChain(ops.get(0).getPrevHash(), ops.get(ops.size() - 1).getHash());
+            return segment;
+        } catch (IOException e) {
+            // Запись идёт в память, поэтому IOException здесь не ожидается
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Распаковать операции сегмента (в исходном порядке), без хэшей журнала.
+     */
+    public List<Operation> decode() {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(decompress(data, rawLength)));
+            int dictionarySize = (int) readVarint(in);
+            String[] names = new String[dictionarySize];
+            for (int i = 0; i < dictionarySize; i++) {
+                names[i] = readString(in);
+            }
+
+            List<Operation> ops = new ArrayList<>(count);
+            long second = 0;
+            for (int i = 0; i < count; i++) {
+                boolean isIncome = in.readBoolean();
+                double amount = in.readDouble();
+                second += unzigzag(readVarint(in));
+                int nano = (int) readVarint(in);
+                int categoryId = (int) readVarint(in);
+                String description = readString(in);
+                String idempotencyKey = readString(in);
+                byte[] counterpartHash = readBytes(in);
+                LocalDateTime dateTime = LocalDateTime.ofEpochSecond(second, nano, ZoneOffset.UTC);
+                ops.add(new Operation(isIncome, description, amount,
+                        categoryId == 0 ? null : names[categoryId - 1], dateTime, idempotencyKey, counterpartHash));
+            }
+            return ops;
+        } catch (IOException | DataFormatException e) {
+            throw new IllegalStateException("Повреждён сегмент истории операций", e);
+        }
+    }
+
+    /**
+     * Распаковать операции и встроить их в журнал: хэши пересчитываются от headPrevHash
+     * (SHA-256 на каждую операцию). Если начало цепочки ещё не известно, хэшей не будет.
+     */
+    public List<Operation> decodeChained() {
+        List<Operation> ops = decode();
+        if (headPrevHash != null) {
+            byte[] prev = headPrevHash;
+            for (Operation op : ops) {
+                op.chain(prev);
+                prev = op.getHash();
+            }
+        }
+        return ops;
+    }
+
+    public byte[] getHeadPrevHash() {
+        return headPrevHash;
+    }
+
+    public byte[] getTailHash() {
+        return tailHash;
+    }
+
+    /**
+     * Запомнить начало и конец цепочки хэшей (только если они ещё не заданы).
+     */
+    void attachChain(byte[] headPrevHash, byte[] tailHash) {
+        if (this.headPrevHash == null) {
+            this.headPrevHash = headPrevHash;
+            this.tailHash = tailHash;
+        }
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public LocalDateTime getFirstDate() {
+        return firstDate;
+    }
+
+    public LocalDateTime getLastDate() {
+        return lastDate;
+    }
+
+    public double getTotalIncome() {
+        return totalIncome;
+    }
+
+    public double getTotalExpense() {
+        return totalExpense;
+    }
+
+    /**
+     * Расходы сегмента по категориям (из сводки, без распаковки).
+     */
+    public double getExpenseForCategory(String categoryName) {
+        return expenseByCategory.getOrDefault(categoryName, 0.0);
+    }
+
+    private static byte[] compress(byte[] raw) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 64);
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(chunk);
+            out.write(chunk, 0, n);
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] compressed, int rawLength) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        inflater.setInput(compressed);
+        byte[] raw = new byte[rawLength];
+        int offset = 0;
+        while (offset < rawLength && !inflater.finished()) {
+            offset += inflater.inflate(raw, offset, rawLength - offset);
+        }
+        inflater.end();
+        return raw;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length + 1L);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = (int) readVarint(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        writeVarint(out, bytes.length + 1L);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = (int) readVarint(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,102 @@
+package financeapp.model;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Правило регулярной операции (зарплата, подписка, аренда и т.д.).
+ * Храним:
+ * - тип (доход или расход) и описание,
+ * - сумму и категорию (для расхода),
+ * - периодичность (period) и дату первого выполнения (startDate),
+ * - сколько раз правило уже выполнено (executedCount).
+ *
+ * Дата следующего выполнения всегда считается от startDate,
+ * поэтому правило "каждое 31-е число" не съезжает на 28-е после февраля.
+ */
+public class RecurringOperation implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int id;
+    private final boolean isIncome;
+    private final String description;
+    private final double amount;
+    private final String categoryName; // null, если это доход
+    private final BudgetPeriod period;
+    private final LocalDate startDate;
+    private long executedCount;
+
+    public RecurringOperation(int id, boolean isIncome, String description, double amount,
+                              String categoryName, BudgetPeriod period, LocalDate startDate) {
+        this.id = id;
+        this.isIncome = isIncome;
+        this.description = description;
+        this.amount = amount;
+        this.categoryName = categoryName;
+        this.period = period;
+        this.startDate = startDate;
+        this.executedCount = 0;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public boolean isIncome() {
+        return isIncome;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public String getCategoryName() {
+        return categoryName;
+    }
+
+    public BudgetPeriod getPeriod() {
+        return period;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    /**
+     * Сколько срабатываний уже выполнено (или пропущено).
+     */
+    public long getExecutedCount() {
+        return executedCount;
+    }
+
+    /**
+     * Дата, на которую приходится следующее (ещё не выполненное) срабатывание.
+     */
+    public LocalDate getNextDate() {
+        return period.plus(startDate, executedCount);
+    }
+
+    /**
+     * Отметить, что очередное срабатывание выполнено.
+     */
+    public void markExecuted() {
+        executedCount++;
+    }
+
+    @Override
+    public String toString() {
+        String dateStr = getNextDate().format(DateTimeFormatter.ISO_LOCAL_DATE);
+        if (isIncome) {
+            return String.format("#%d [Доход] %s: +%.2f, период: %s, следующее: %s",
+                    id, description, amount, period, dateStr);
+        } else {
+            return String.format("#%d [Расход] %s (категория: %s): -%.2f, период: %s, следующее: %s",
+                    id, description, categoryName, amount, period, dateStr);
+        }
+    }
+}
@@ -1,27 +1,76 @@
 package financeapp.model;
 
 import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * Кошелёк пользователя:
  * - currentBalance: текущий баланс (с учётом доходов и расходов),
- * - operations: список всех операций (доход и расход),
- * - categories: набор (HashMap) категорий (например, "Еда", "Коммуналка" и т.д.).
+ * - operations: "горячие" (недавние) операции, доход и расход,
+ * - coldSegments: старые операции, упакованные в сжатые сегменты (см. OperationSegment),
+ * - categories: набор (HashMap) категорий (например, "Еда", "Коммуналка" и т.д.),
+ * - recurringOperations: правила регулярных операций (зарплата, подписки),
+ * - searchIndex: полнотекстовый индекс по описаниям операций,
+ * - categoryRules: правила автоопределения категории ("ключевое слово -> категория"),
+ * - dedupIndex: ключи идемпотентности уже проведённых операций,
+ * - журнал: цепочка хэшей операций (lastHash), баланс по журналу (ledgerBalance)
+ *   и контрольные точки с корнями дерева Меркла (checkpoints).
  */
 public class Wallet implements Serializable {
     private static final long serialVersionUID = 1L;
 
+    // Максимум операций в одном холодном сегменте
+    private static final int SEGMENT_SIZE = 8192;
+
+    // Через сколько операций ставится контрольная точка журнала
+    public static final int CHECKPOINT_INTERVAL = 1024;
+
     private double currentBalance;
     private List<Operation> operations;
     private HashMap<String, Category> categories;
+    private List<RecurringOperation> recurringOperations; // может быть null в старых файлах
+    private int nextRecurringId;
+    private OperationIndex searchIndex; // может быть null в старых файлах
+    private HashMap<String, String> categoryRules; // может быть null в старых файлах
+    private List<OperationSegment> coldSegments; // может быть null в старых файлах
+    private int sealedCount; // сколько операций лежит в холодных сегментах
+    private DedupIndex dedupIndex; // может быть null в старых файлах
+    private byte[] lastHash; // null в старых файлах — тогда журнал строится по истории
+    private double ledgerBalance;
+    private List<LedgerCheckpoint> checkpoints;
+
+    // Последний распакованный сегмент: поиск часто попадает в один и тот же сегмент подряд
+    private transient OperationSegment cachedSegment;
+    private transient List<Operation> cachedSegmentOps;
+    private transient boolean cachedSegmentChained;
+    // Номер первой операции после каждого холодного сегмента — для двоичного поиска по номеру
+    private transient int[] segmentEnds;
+    // Счётчики периодов категорий проверены после загрузки (см. ensureCategoryPeriods)
+    private transient boolean categoryPeriodsReady;
 
     public Wallet() {
         this.currentBalance = 0.0;
         this.operations = new ArrayList<>();
         this.categories = new HashMap<>();
+        this.recurringOperations = new ArrayList<>();
+        this.nextRecurringId = 1;
+        this.searchIndex = new OperationIndex();
+        this.categoryRules = new HashMap<>();
+        this.coldSegments = new ArrayList<>();
+        this.sealedCount = 0;
+        this.dedupIndex = new DedupIndex();
+        this.lastHash = LedgerHash.GENESIS;
+        this.ledgerBalance = 0.0;
+        this.checkpoints = new ArrayList<>();
+        this.categoryPeriodsReady = true;
     }
 
     public double getCurrentBalance() {
@@ -42,18 +91,354 @@ public class Wallet implements Serializable {
         currentBalance -= amount;
     }
 
+    /**
+     * Горячие (недавние) операции. Старые операции, убранные в холодные сегменты,
+     * сюда не входят — для полной истории есть getAllOperations().
+     */
     public List<Operation> getOperations() {
         return operations;
     }
 
     /**
-     * Сохранить операцию в общем списке, чтобы можно было посмотреть историю.
+     * Общее количество операций в истории (холодные + горячие).
+     */
+    public int getOperationCount() {
+        return sealedCount + operations.size();
+    }
+
+    public DedupIndex getDedupIndex() {
+        if (dedupIndex == null) {
+            dedupIndex = new DedupIndex();
+        }
+        return dedupIndex;
+    }
+
+    public List<OperationSegment> getColdSegments() {
+        if (coldSegments == null) {
+            coldSegments = new ArrayList<>();
+        }
+        return coldSegments;
+    }
+
+    /**
+     * Вся история операций по порядку: сначала холодные сегменты (распаковываются
+     * по одному во время обхода), затем горячие операции.
+     * У операций из холодных сегментов хэшей журнала нет — для них есть getLedgerOperations().
+     */
+    public Iterable<Operation> getAllOperations() {
+        return iterateOperations(false);
+    }
+
+    /**
+     * Вся история вместе с хэшами журнала (холодные сегменты распаковываются с пересчётом хэшей).
+     */
+    public Iterable<Operation> getLedgerOperations() {
+        ensureLedger();
+        return iterateOperations(true);
+    }
+
+    private Iterable<Operation> iterateOperations(boolean chained) {
+        return () -> new Iterator<Operation>() {
+            private int segment = 0;
+            private Iterator<Operation> current = Collections.emptyIterator();
+            private boolean hotStarted = false;
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext()) {
+                    if (segment < getColdSegments().size()) {
+                        OperationSegment next = getColdSegments().get(segment++);
+                        current = (chained ? next.decodeChained() : next.decode()).iterator();
+                    } else if (!hotStarted) {
+                        hotStarted = true;
+                        current = operations.iterator();
+                    } else {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public Operation next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    /**
+     * Сумма всех доходов: по холодным сегментам берём готовые сводки, без распаковки.
+     */
+    public double getTotalIncome() {
+        double total = 0.0;
+        for (OperationSegment segment : getColdSegments()) {
+            total += segment.getTotalIncome();
+        }
+        for (Operation op : operations) {
+            if (op.isIncome()) {
+                total += op.getAmount();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Сумма всех расходов: по холодным сегментам берём готовые сводки, без распаковки.
+     */
+    public double getTotalExpense() {
+        double total = 0.0;
+        for (OperationSegment segment : getColdSegments()) {
+            total += segment.getTotalExpense();
+        }
+        for (Operation op : operations) {
+            if (!op.isIncome()) {
+                total += op.getAmount();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Убрать в холодные сегменты операции старше cutoff.
+     * Переносим только начало списка (операции идут в порядке добавления), чтобы
+     * порядковые номера операций не менялись: холодные — это номера [0, sealedCount).
+     *
+     * Недозаполненные сегменты в конце распаковываются и пакуются заново вместе с новыми
+     * операциями: иначе каждый запуск приложения добавлял бы по крошечному сегменту,
+     * а сжатие маленьких блоков почти ничего не даёт.
+     * @return сколько операций перенесено
+     */
+    public int sealOperationsOlderThan(LocalDateTime cutoff) {
+        int prefix = 0;
+        while (prefix < operations.size() && operations.get(prefix).getDateTime().isBefore(cutoff)) {
+            prefix++;
+        }
+        if (prefix == 0) {
+            return 0;
+        }
+
+        // Индекс и журнал нужно привести в соответствие с историей до того, как она поменяет форму
+        getSearchIndex();
+        ensureLedger();
+        List<OperationSegment> segments = getColdSegments();
+        int reopenFrom = segments.size();
+        while (reopenFrom > 0 && segments.get(reopenFrom - 1).getCount() < SEGMENT_SIZE) {
+            reopenFrom--;
+        }
+        List<Operation> toSeal = new ArrayList<>();
+        for (OperationSegment segment : segments.subList(reopenFrom, segments.size())) {
+            toSeal.addAll(segment.decodeChained());
+            sealedCount -= segment.getCount();
+        }
+        segments.subList(reopenFrom, segments.size()).clear();
+        toSeal.addAll(operations.subList(0, prefix));
+
+        for (int start = 0; start < toSeal.size(); start += SEGMENT_SIZE) {
+            int end = Math.min(toSeal.size(), start + SEGMENT_SIZE);
+            segments.add(OperationSegment.seal(toSeal.subList(start, end)));
+        }
+        sealedCount += toSeal.size();
+        segmentEnds = null;
+        cachedSegment = null;
+        cachedSegmentOps = null;
+        // Новый список, а не subList, чтобы освободить память из-под старых операций
+        operations = new ArrayList<>(operations.subList(prefix, operations.size()));
+        return prefix;
+    }
+
+    /**
+     * Сохранить операцию в общем списке, чтобы можно было посмотреть историю,
+     * и сразу добавить её описание в поисковый индекс.
      */
     public void addOperation(Operation op) {
+        ensureCategoryPeriods();
+        OperationIndex index = getSearchIndex();
+        ensureLedger();
+        op.chain(lastHash);
         operations.add(op);
+        index.add(op);
+
+        appendToLedger(op);
+        int count = getOperationCount();
+        if (count % CHECKPOINT_INTERVAL == 0) {
+            List<byte[]> block = new ArrayList<>(CHECKPOINT_INTERVAL);
+            for (int n = count - CHECKPOINT_INTERVAL; n < count; n++) {
+                block.add(getLedgerOperation(n).getHash());
+            }
+            addCheckpoint(count, block);
+        }
+    }
+
+    /**
+     * Хэш последней операции журнала.
+     */
+    public byte[] getLastHash() {
+        ensureLedger();
+        return lastHash;
+    }
+
+    /**
+     * Баланс, посчитанный по самим операциям журнала (доходы минус расходы).
+     * Должен совпадать с currentBalance.
+     */
+    public double getLedgerBalance() {
+        ensureLedger();
+        return ledgerBalance;
+    }
+
+    public List<LedgerCheckpoint> getCheckpoints() {
+        ensureLedger();
+        return checkpoints;
+    }
+
+    /**
+     * Если кошелёк загружен из старого файла без журнала, один раз строим цепочку хэшей
+     * и контрольные точки по всей истории (холодные сегменты получают свои начало и конец цепочки).
+     */
+    private void ensureLedger() {
+        if (lastHash != null && checkpoints != null) {
+            return;
+        }
+
+        lastHash = LedgerHash.GENESIS;
+        ledgerBalance = 0.0;
+        checkpoints = new ArrayList<>();
+        List<byte[]> block = new ArrayList<>(CHECKPOINT_INTERVAL);
+        int count = 0;
+
+        for (OperationSegment segment : getColdSegments()) {
+            List<Operation> segmentOps = segment.decodeChained();
+            byte[] head = lastHash;
+            for (Operation op : segmentOps) {
+                if (op.getHash() == null) {
+                    op.chain(lastHash);
+                }
+                appendToLedger(op);
+                block.add(op.getHash());
+                if (++count % CHECKPOINT_INTERVAL == 0) {
+                    addCheckpoint(count, block);
+                    block = new ArrayList<>(CHECKPOINT_INTERVAL);
+                }
+            }
+            segment.attachChain(head, lastHash);
+        }
+        for (Operation op : operations) {
+            if (op.getHash() == null) {
+                op.chain(lastHash);
+            }
+            appendToLedger(op);
+            block.add(op.getHash());
+            if (++count % CHECKPOINT_INTERVAL == 0) {
+                addCheckpoint(count, block);
+                block = new ArrayList<>(CHECKPOINT_INTERVAL);
+            }
+        }
+
+        // Распакованный ранее сегмент мог быть без хэшей
+        cachedSegment = null;
+        cachedSegmentOps = null;
+    }
+
+    private void appendToLedger(Operation op) {
+        lastHash = op.getHash();
+        ledgerBalance += op.isIncome() ? op.getAmount() : -op.getAmount();
+    }
+
+    private void addCheckpoint(int count, List<byte[]> blockHashes) {
+        checkpoints.add(new LedgerCheckpoint(count, lastHash, LedgerHash.merkleRoot(blockHashes), ledgerBalance));
+    }
+
+    /**
+     * Операция по её порядковому номеру в истории (номера хранит поисковый индекс).
+     * Операции из холодных сегментов возвращаются без хэшей журнала.
+     */
+    public Operation getOperationByNumber(int number) {
+        return findOperation(number, false);
+    }
+
+    /**
+     * Операция по номеру вместе с хэшами журнала (для контрольных точек и проверки журнала).
+     */
+    public Operation getLedgerOperation(int number) {
+        ensureLedger();
+        return findOperation(number, true);
+    }
+
+    private Operation findOperation(int number, boolean chained) {
+        if (number >= sealedCount) {
+            return operations.get(number - sealedCount);
+        }
+
+        if (number < 0) {
+            throw new IndexOutOfBoundsException("Нет операции с номером " + number);
+        }
+
+        int[] ends = getSegmentEnds();
+        int s = segmentOf(number);
+        OperationSegment segment = getColdSegments().get(s);
+        if (cachedSegment != segment || (chained && !cachedSegmentChained)) {
+            cachedSegmentOps = chained ? segment.decodeChained() : segment.decode();
+            cachedSegment = segment;
+            cachedSegmentChained = chained;
+        }
+        return cachedSegmentOps.get(number - (s == 0 ? 0 : ends[s - 1]));
+    }
+
+    /**
+     * Может ли операция с этим номером попасть в период [from, to] (границы могут быть null).
+     * Для операций холодных сегментов отвечаем по датам сегмента, не распаковывая его,
+     * поэтому при поиске за период "чужие" сегменты пропускаются целиком.
+     */
+    public boolean mayBeWithin(int number, LocalDate from, LocalDate to) {
+        if (number >= sealedCount || (from == null && to == null)) {
+            return true;
+        }
+        OperationSegment segment = getColdSegments().get(segmentOf(number));
+        return (from == null || !segment.getLastDate().toLocalDate().isBefore(from))
+                && (to == null || !segment.getFirstDate().toLocalDate().isAfter(to));
+    }
+
+    /**
+     * Номер холодного сегмента, в котором лежит операция: первый сегмент, который заканчивается после number.
+     */
+    private int segmentOf(int number) {
+        int found = Arrays.binarySearch(getSegmentEnds(), number);
+        return found >= 0 ? found + 1 : -found - 1;
+    }
+
+    private int[] getSegmentEnds() {
+        List<OperationSegment> segments = getColdSegments();
+        if (segmentEnds == null || segmentEnds.length != segments.size()) {
+            int[] ends = new int[segments.size()];
+            int end = 0;
+            for (int s = 0; s < ends.length; s++) {
+                end += segments.get(s).getCount();
+                ends[s] = end;
+            }
+            segmentEnds = ends;
+        }
+        return segmentEnds;
+    }
+
+    /**
+     * Поисковый индекс. Если кошелёк загружен из старого файла без индекса
+     * (или индекс почему-то отстал от истории), строим его заново один раз.
+     */
+    public OperationIndex getSearchIndex() {
+        if (searchIndex == null || searchIndex.getIndexedCount() != getOperationCount()) {
+            searchIndex = new OperationIndex();
+            for (Operation op : getAllOperations()) {
+                searchIndex.add(op);
+            }
+        }
+        return searchIndex;
     }
 
     public HashMap<String, Category> getCategories() {
+        ensureCategoryPeriods();
         return categories;
     }
 
@@ -61,6 +446,7 @@ public class Wallet implements Serializable {
      * Если нужной категории нет, создадим её с нулевым лимитом.
      */
     public Category getOrCreateCategory(String categoryName) {
+        ensureCategoryPeriods();
         if (!categories.containsKey(categoryName)) {
             categories.put(categoryName, new Category(categoryName, 0.0));
         }
@@ -71,6 +457,109 @@ public class Wallet implements Serializable {
      * Если категория не существует, вернём null.
      */
     public Category getCategory(String categoryName) {
+        ensureCategoryPeriods();
         return categories.get(categoryName);
     }
+
+    /**
+     * Категории из старых файлов не имеют счётчиков по периодам: заполняем их
+     * одним проходом по истории, иначе расходы текущего периода "потерялись" бы для лимита.
+     */
+    private void ensureCategoryPeriods() {
+        if (categoryPeriodsReady) {
+            return;
+        }
+        categoryPeriodsReady = true;
+
+        HashMap<String, Category> pending = new HashMap<>();
+        for (Category cat : categories.values()) {
+            if (cat.needsPeriodBackfill()) {
+                cat.beginPeriodBackfill();
+                pending.put(cat.getName(), cat);
+            }
+        }
+        if (!pending.isEmpty()) {
+            replayHistory(pending);
+        }
+    }
+
+    /**
+     * Сменить бюджетный период категории и заполнить её кольцо счётчиков по истории.
+     */
+    public void setCategoryPeriod(Category cat, BudgetPeriod period) {
+        ensureCategoryPeriods();
+        cat.setPeriod(period);
+        HashMap<String, Category> pending = new HashMap<>();
+        pending.put(cat.getName(), cat);
+        replayHistory(pending);
+    }
+
+    /**
+     * Заполнить кольца счётчиков категорий по истории. Холодный сегмент распаковываем,
+     * только если без этого не обойтись: сегмент без расходов категории пропускаем,
+     * а если весь сегмент попадает в один период категории, берём сумму из его сводки.
+     */
+    private void replayHistory(HashMap<String, Category> pending) {
+        for (OperationSegment segment : getColdSegments()) {
+            LocalDate first = segment.getFirstDate().toLocalDate();
+            LocalDate last = segment.getLastDate().toLocalDate();
+            HashMap<String, Category> detailed = new HashMap<>();
+            for (Category cat : pending.values()) {
+                double spent = segment.getExpenseForCategory(cat.getName());
+                if (spent == 0.0) {
+                    continue;
+                }
+                if (cat.getPeriod().indexOf(first) == cat.getPeriod().indexOf(last)) {
+                    cat.replaySpent(spent, first);
+                } else {
+                    detailed.put(cat.getName(), cat);
+                }
+            }
+            if (!detailed.isEmpty()) {
+                for (Operation op : segment.decode()) {
+                    Category cat = op.isIncome() ? null : detailed.get(op.getCategoryName());
+                    if (cat != null) {
+                        cat.replay(op);
+                    }
+                }
+            }
+        }
+        for (Operation op : operations) {
+            Category cat = op.isIncome() ? null : pending.get(op.getCategoryName());
+            if (cat != null) {
+                cat.replay(op);
+            }
+        }
+    }
+
+    /**
+     * Правила автоопределения категории: ключевое слово (в нижнем регистре) -> категория.
+     */
+    public HashMap<String, String> getCategoryRules() {
+        if (categoryRules == null) {
+            categoryRules = new HashMap<>();
+        }
+        return categoryRules;
+    }
+
+    public List<RecurringOperation> getRecurringOperations() {
+        if (recurringOperations == null) {
+            recurringOperations = new ArrayList<>();
+        }
+        return recurringOperations;
+    }
+
+    /**
+     * Создать правило регулярной операции с очередным номером и сохранить его в кошельке.
+     */
+    public RecurringOperation addRecurringOperation(boolean isIncome, String description, double amount,
+                                                    String categoryName, BudgetPeriod period, LocalDate startDate) {
+        if (nextRecurringId <= 0) {
+            nextRecurringId = getRecurringOperations().size() + 1;
+        }
+        RecurringOperation rule = new RecurringOperation(nextRecurringId++, isIncome, description, amount,
+                categoryName, period, startDate);
+        getRecurringOperations().add(rule);
+        return rule;
+    }
 }
@@ -0,0 +1,272 @@
+package financeapp.service;
+
+import financeapp.model.Command;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Допуск команд к выполнению (ограничение частоты и обратное давление) внутри одного процесса.
+ *
+ * Каждая команда "стоит" несколько токенов (перевод дороже, так как пишет кошелёк получателя на диск).
+ * Токены берутся из двух корзин (token bucket):
+ * - корзина пользователя — своя у каждого логина, так что всплеск одного пользователя
+ *   никогда не урезает лимит другого,
+ * - общая корзина на весь процесс.
+ * Состояние корзины — неизменяемый объект, который заменяется через CAS, поэтому блокировок нет.
+ *
+ * Кроме того, у каждого пользователя есть ограниченная "очередь" — счётчик команд, которые уже
+ * допущены и ещё выполняются. Если очередь пользователя заполнена, новая команда отклоняется сразу.
+ *
+ * Простаивающих пользователей (корзина снова полна, очередь пуста) время от времени удаляем:
+ * для них новое состояние ничем не отличается от старого, а таблица не растёт бесконечно.
+ *
+ * Ответ допуска:
+ * - ADMITTED — выполнять сейчас,
+ * - DELAYED — выполнять после небольшой паузы (токены уже зарезервированы в долг),
+ * - REJECTED — отклонить, клиенту сообщается, через сколько повторить.
+ */
+public class AdmissionController {
+    // Раз в столько допусков проверяем таблицу пользователей на простаивающих
+    private static final int EVICTION_INTERVAL = 1024;
+    // Значение счётчика очереди у удалённой записи: занять в ней место уже нельзя
+    private static final int RETIRED = -1;
+
+    private final double userRate;
+    private final double userBurst;
+    private final double globalRate;
+    private final double globalBurst;
+    private final int queueDepth;
+    private final long maxDelayMillis;
+
+    private final ConcurrentHashMap<String, UserState> users = new ConcurrentHashMap<>();
+    private final AtomicReference<Bucket> globalBucket;
+    private final AtomicLong admitCalls = new AtomicLong();
+
+    public enum Status {
+        ADMITTED,
+        DELAYED,
+        REJECTED
+    }
+
+    /**
+     * Решение по команде. Для допущенных команд после выполнения нужно вызвать release().
+     */
+    public static class Decision {
+        private final Status status;
+        private final long waitMillis;
+        private final UserState user; // null, если место в очереди не занималось
+
+        private Decision(Status status, long waitMillis, UserState user) {
+            this.status = status;
+            this.waitMillis = waitMillis;
+            this.user = user;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * Для DELAYED — сколько подождать перед выполнением, для REJECTED — через сколько повторить.
+         */
+        public long getWaitMillis() {
+            return waitMillis;
+        }
+    }
+
+    /**
+     * Состояние корзины: сколько токенов и когда последний раз пополняли.
+     * Токенов может быть меньше нуля — это резерв "в долг" для отложенных команд.
+     */
+    private static class Bucket {
+        final double tokens;
+        final long updatedNanos;
+
+        Bucket(double tokens, long updatedNanos) {
+            this.tokens = tokens;
+            this.updatedNanos = updatedNanos;
+        }
+    }
+
+    /**
+     * Корзина и очередь одного пользователя.
+     */
+    private static class UserState {
+        final AtomicReference<Bucket> bucket;
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        UserState(double burst, long now) {
+            this.bucket = new AtomicReference<>(new Bucket(burst, now));
+        }
+    }
+
+    /**
+     * Настройки по умолчанию берутся из системных свойств (financeapp.rate.*).
+     */
+    public AdmissionController() {
+        this(doubleProperty("financeapp.rate.user.per.sec", 5),
+                doubleProperty("financeapp.rate.user.burst", 20),
+                doubleProperty("financeapp.rate.global.per.sec", 200),
+                doubleProperty("financeapp.rate.global.burst", 500),
+                Integer.getInteger("financeapp.rate.queue.depth", 4),
+                Long.getLong("financeapp.rate.max.delay.ms", 200));
+    }
+
+    public AdmissionController(double userRate, double userBurst, double globalRate, double globalBurst,
+                               int queueDepth, long maxDelayMillis) {
+        this.userRate = userRate;
+        this.userBurst = userBurst;
+        this.globalRate = globalRate;
+        this.globalBurst = globalBurst;
+        this.queueDepth = queueDepth;
+        this.maxDelayMillis = maxDelayMillis;
+        this.globalBucket = new AtomicReference<>(new Bucket(globalBurst, System.nanoTime()));
+    }
+
+    /**
+     * Решить, можно ли выполнить команду пользователя.
+     */
+    public Decision admit(String login, Command command) {
+        int cost = costOf(command);
+        if (cost == 0) {
+            return new Decision(Status.ADMITTED, 0, null);
+        }
+        if (admitCalls.incrementAndGet() % EVICTION_INTERVAL == 0) {
+            evictIdle(System.nanoTime());
+        }
+
+        // Занимаем место в очереди пользователя (если она полна — отказ без траты токенов)
+        UserState user = users.computeIfAbsent(login, l -> new UserState(userBurst, System.nanoTime()));
+        while (true) {
+            int current = user.inFlight.get();
+            if (current == RETIRED) {
+                // Запись только что удалена как простаивающая — берём свежую
+                users.remove(login, user);
+                user = users.computeIfAbsent(login, l -> new UserState(userBurst, System.nanoTime()));
+                continue;
+            }
+            if (current >= queueDepth) {
+                return new Decision(Status.REJECTED, maxDelayMillis, null);
+            }
+            if (user.inFlight.compareAndSet(current, current + 1)) {
+                break;
+            }
+        }
+
+        long now = System.nanoTime();
+        long userWait = take(user.bucket, cost, userRate, userBurst, now);
+        if (userWait < 0) {
+            user.inFlight.decrementAndGet();
+            return new Decision(Status.REJECTED, -userWait, null);
+        }
+        long globalWait = take(globalBucket, cost, globalRate, globalBurst, now);
+        if (globalWait < 0) {
+            // Общая корзина отказала — возвращаем токены пользователю
+            refund(user.bucket, cost, now);
+            user.inFlight.decrementAndGet();
+            return new Decision(Status.REJECTED, -globalWait, null);
+        }
+
+        long wait = Math.max(userWait, globalWait);
+        return new Decision(wait == 0 ? Status.ADMITTED : Status.DELAYED, wait, user);
+    }
+
+    /**
+     * Команда выполнена — освобождаем место в очереди пользователя.
+     */
+    public void release(Decision decision) {
+        if (decision.user != null) {
+            decision.user.inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Сколько токенов стоит команда (выгрузка и проверка журнала читают всю историю). Выход бесплатный: сохранение данных нельзя блокировать.
+     */
+    static int costOf(Command command) {
+        switch (command) {
+            case EXIT:
+                return 0;
+            case TRANSFER_FUNDS:
+            case EXPORT_DATA:
+            case VERIFY_LEDGER:
+                return 5;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Взять cost токенов из корзины через CAS.
+     * @return 0 — токены есть; > 0 — токены взяты в долг, подождать столько мс;
+     *         < 0 — отказ, повторить через столько мс (по модулю)
+     */
+    private long take(AtomicReference<Bucket> bucket, int cost, double rate, double burst, long now) {
+        while (true) {
+            Bucket old = bucket.get();
+            double tokens = refilled(old, rate, burst, now);
+            double left = tokens - cost;
+
+            long wait = 0;
+            if (left < 0) {
+                wait = (long) Math.ceil(-left / rate * 1000);
+                if (wait > maxDelayMillis) {
+                    return -wait;
+                }
+            }
+
+            if (bucket.compareAndSet(old, new Bucket(left, Math.max(now, old.updatedNanos)))) {
+                return wait;
+            }
+        }
+    }
+
+    private void refund(AtomicReference<Bucket> bucket, int cost, long now) {
+        while (true) {
+            Bucket old = bucket.get();
+            double tokens = Math.min(userBurst, refilled(old, userRate, userBurst, now) + cost);
+            if (bucket.compareAndSet(old, new Bucket(tokens, Math.max(now, old.updatedNanos)))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Удалить пользователей, у которых корзина снова полна и нет выполняющихся команд.
+     * Запись сначала помечается RETIRED (CAS 0 -> -1), поэтому команда, успевшая её получить,
+     * не займёт в ней место, а возьмёт новую.
+     */
+    private void evictIdle(long now) {
+        Iterator<Map.Entry<String, UserState>> it = users.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, UserState> entry = it.next();
+            UserState user = entry.getValue();
+            if (refilled(user.bucket.get(), userRate, userBurst, now) >= userBurst
+                    && user.inFlight.compareAndSet(0, RETIRED)) {
+                users.remove(entry.getKey(), user);
+            }
+        }
+    }
+
+    private static double refilled(Bucket bucket, double rate, double burst, long now) {
+        long elapsed = Math.max(0, now - bucket.updatedNanos);
+        return Math.min(burst, bucket.tokens + elapsed / 1e9 * rate);
+    }
+
+    private static double doubleProperty(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
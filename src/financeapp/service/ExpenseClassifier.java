@@ -0,0 +1,129 @@
+package financeapp.service;
+
+import financeapp.model.Operation;
+import financeapp.model.Wallet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Автоматическое определение категории расхода по описанию.
+ *
+ * Порядок проверки:
+ * 1) правила пользователя "ключевое слово -> категория" (автомат Ахо–Корасик);
+ * 2) выученные соответствия "описание -> категория" из истории расходов.
+ *
+ * Результаты запоминаются в небольшом LRU-кэше: при массовом вводе
+ * одинаковые описания ("Такси", "Кофе") повторяются очень часто.
+ * Выученные соответствия тоже хранятся в LRU: помним LEARNED_SIZE самых свежих описаний,
+ * иначе на длинной истории с уникальными описаниями таблица росла бы без предела.
+ */
+public class ExpenseClassifier {
+    private static final int CACHE_SIZE = 1024;
+    private static final int LEARNED_SIZE = 1024;
+    // Отдельный маркер, чтобы кэшировать и отрицательный ответ ("категорию не нашли")
+    private static final String NO_CATEGORY = "";
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+
+    private final Wallet wallet;
+    private KeywordAutomaton automaton;
+    private Map<String, String> learned;
+
+    private final Map<String, String> cache = lruMap(CACHE_SIZE);
+
+    public ExpenseClassifier(Wallet wallet) {
+        this.wallet = wallet;
+    }
+
+    /**
+     * Определить категорию по описанию расхода.
+     * @return название категории или null, если подходящей нет
+     */
+    public String classify(String description) {
+        String key = normalize(description);
+        if (key.isEmpty()) {
+            return null;
+        }
+
+        String cached = cache.get(key);
+        if (cached == null) {
+            cached = lookup(key);
+            cache.put(key, cached == null ? NO_CATEGORY : cached);
+        }
+        return cached == null || cached.isEmpty() ? null : cached;
+    }
+
+    /**
+     * Запомнить, что расход с таким описанием относится к категории.
+     */
+    public void learn(String description, String categoryName) {
+        String key = normalize(description);
+        if (key.isEmpty()) {
+            return;
+        }
+        getLearned().put(key, categoryName);
+        cache.remove(key);
+    }
+
+    /**
+     * Правила изменились — пересобираем автомат при следующем обращении и сбрасываем кэш.
+     */
+    public void rulesChanged() {
+        automaton = null;
+        cache.clear();
+    }
+
+    private String lookup(String key) {
+        if (automaton == null) {
+            automaton = new KeywordAutomaton(wallet.getCategoryRules());
+        }
+        String byRule = automaton.findBest(key);
+        if (byRule != null) {
+            return byRule;
+        }
+        return getLearned().get(key);
+    }
+
+    /**
+     * Выученные соответствия строим по истории один раз, при первом обращении.
+     * Если одно описание встречалось с разными категориями, берём самую позднюю.
+     * История проходит от старых операций к новым, поэтому в LRU остаются самые свежие описания.
+     * Переводы пропускаем: их описание ("Подарок") не говорит о категории обычного расхода.
+     */
+    private Map<String, String> getLearned() {
+        if (learned == null) {
+            learned = lruMap(LEARNED_SIZE);
+            for (Operation op : wallet.getAllOperations()) {
+                if (!op.isIncome() && op.getDescription() != null && op.getCategoryName() != null
+                        && !op.getCategoryName().startsWith(FinanceManager.TRANSFER_CATEGORY_PREFIX)) {
+                    String key = normalize(op.getDescription());
+                    if (!key.isEmpty()) {
+                        learned.put(key, op.getCategoryName());
+                    }
+                }
+            }
+        }
+        return learned;
+    }
+
+    private static Map<String, String> lruMap(int maxSize) {
+        return new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Нижний регистр, "ё" -> "е" и одиночные пробелы: так "Такси  " и "такси" считаются одним описанием.
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String normalized = text.trim().toLowerCase().replace('ё', 'е');
+        return SPACES.matcher(normalized).replaceAll(" ");
+    }
+}
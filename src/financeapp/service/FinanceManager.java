@@ -1,21 +1,54 @@
 package financeapp.service;
 
 import financeapp.data.DataManager;
+import financeapp.data.ReportExporter;
+import financeapp.model.BudgetPeriod;
 import financeapp.model.Category;
+import financeapp.model.LedgerHash;
 import financeapp.model.Operation;
+import financeapp.model.RecurringOperation;
 import financeapp.model.User;
 import financeapp.model.Wallet;
 
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 /**
  * В этом классе реализуется "бизнес-логика":
  * - добавление доходов/расходов,
  * - проверка лимитов,
+ * - защита от повторного проведения операций (ключи идемпотентности),
+ * - автоопределение категорий расходов,
  * - переводы между пользователями,
+ * - регулярные операции,
+ * - выгрузка операций и статистики в файлы,
+ * - проверка журнала операций (цепочка хэшей),
  * - сохранение данных.
  */
 public class FinanceManager {
+    // Сколько дней операции остаются "горячими" (настраивается свойством financeapp.hot.days)
+    private static final int HOT_DAYS = Integer.getInteger("financeapp.hot.days", 365);
+    // Сколько пропущенных регулярных операций можно догнать без подтверждения пользователя
+    public static final int RECURRING_CATCH_UP_LIMIT = Integer.getInteger("financeapp.recurring.max.catchup", 100);
+    // Категория расхода-перевода: "Перевод пользователю <логин>"
+    static final String TRANSFER_CATEGORY_PREFIX = "Перевод пользователю ";
+    // Описание дохода получателя перевода (по нему проверка журнала находит отправителя)
+    static final String TRANSFER_FROM_PREFIX = "Перевод от ";
+
     private final User currentUser;
     private final Wallet wallet;
+    private final RecurringScheduler scheduler;
+    private final ExpenseClassifier classifier;
+    // Во время догона регулярных операций предупреждения собираем и выводим одной сводкой
+    private boolean batchAlerts;
+    private final Set<String> batchOverLimit = new LinkedHashSet<>();
 
     public FinanceManager(User currentUser) {
         this.currentUser = currentUser;
@@ -23,60 +56,149 @@ public class FinanceManager {
         this.wallet = DataManager.loadWalletForUser(currentUser.getLogin());
         // Привязываем кошелёк к пользователю, чтобы он "знал" о нём
         this.currentUser.setWallet(this.wallet);
+        // Старые операции убираем в сжатые холодные сегменты
+        this.wallet.sealOperationsOlderThan(LocalDate.now().minusDays(HOT_DAYS).atStartOfDay());
+        // Расписание регулярных операций строим по правилам из кошелька
+        this.scheduler = new RecurringScheduler(this.wallet.getRecurringOperations());
+        this.classifier = new ExpenseClassifier(this.wallet);
+        // Быстро проверяем хвост журнала (с последней контрольной точки)
+        if (!LedgerVerifier.verifyIncremental(this.wallet).isOk()) {
+            System.out.println("Внимание! Журнал операций не сходится. Подробности — в пункте \"Проверить журнал операций\".");
+        }
     }
 
     /**
      * Добавить доход (income) в кошелёк.
      * @param description описание дохода (например, "Зарплата")
      * @param amount сумма
+     * @return true, если доход проведён
+     */
+    public boolean addIncome(String description, double amount) {
+        return addIncome(description, amount, LocalDateTime.now(), null);
+    }
+
+    /**
+     * Добавить доход с ключом идемпотентности: повтор с тем же ключом будет пропущен.
+     * @return true, если доход проведён (false — ошибка или повтор)
+     */
+    public boolean addIncome(String description, double amount, String idempotencyKey) {
+        return addIncome(description, amount, LocalDateTime.now(), idempotencyKey);
+    }
+
+    /**
+     * Добавить доход с явно заданной датой и (необязательным) ключом идемпотентности.
+     * @return true, если доход проведён (false — ошибка или повтор)
      */
-    public void addIncome(String description, double amount) {
+    public boolean addIncome(String description, double amount, LocalDateTime dateTime, String idempotencyKey) {
         if (amount <= 0) {
             System.out.println("Ошибка: Сумма дохода должна быть положительной!");
-            return;
+            return false;
+        }
+        if (isDuplicate(wallet, idempotencyKey)) {
+            return false;
         }
 
         wallet.addToBalance(amount);
-        Operation op = new Operation(true, description, amount, null);
+        Operation op = new Operation(true, description, amount, null, dateTime, idempotencyKey);
         wallet.addOperation(op);
+        registerKey(wallet, idempotencyKey);
 
         // Проверим общий баланс
         checkOverallBalance();
+        return true;
     }
 
     /**
      * Добавить расход (expense) из кошелька.
+     * Если категория не указана, пытаемся определить её по описанию.
      * @param description описание (например, "Продукты в супермаркете")
      * @param amount сумма расходов
-     * @param categoryName название категории (например, "Еда")
+     * @param categoryName название категории (например, "Еда") или пустая строка
+     * @return true, если расход проведён
+     */
+    public boolean addExpense(String description, double amount, String categoryName) {
+        return addExpense(description, amount, categoryName, LocalDateTime.now(), null);
+    }
+
+    /**
+     * Добавить расход с ключом идемпотентности: повтор с тем же ключом будет пропущен.
+     * @return true, если расход проведён (false — ошибка или повтор)
      */
-    public void addExpense(String description, double amount, String categoryName) {
+    public boolean addExpense(String description, double amount, String categoryName, String idempotencyKey) {
+        return addExpense(description, amount, categoryName, LocalDateTime.now(), idempotencyKey);
+    }
+
+    /**
+     * Добавить расход с явно заданной датой и (необязательным) ключом идемпотентности.
+     * @return true, если расход проведён (false — ошибка или повтор)
+     */
+    public boolean addExpense(String description, double amount, String categoryName, LocalDateTime dateTime,
+                              String idempotencyKey) {
+        return postExpense(description, amount, categoryName, dateTime, idempotencyKey, true) != null;
+    }
+
+    /**
+     * Провести расход и вернуть созданную операцию (null, если расход не проведён).
+     * @param learnCategory запомнить "описание -> категория" для автоопределения
+     *                      (для переводов — нет: их категория не подходит обычным расходам)
+     */
+    private Operation postExpense(String description, double amount, String categoryName, LocalDateTime dateTime,
+                                  String idempotencyKey, boolean learnCategory) {
         if (amount <= 0) {
             System.out.println("Ошибка: Сумма расхода должна быть положительной!");
-            return;
+            return null;
+        }
+        if (isDuplicate(wallet, idempotencyKey)) {
+            return null;
         }
         if (categoryName == null || categoryName.isEmpty()) {
-            System.out.println("Ошибка: Название категории не может быть пустым!");
-            return;
+            categoryName = classifier.classify(description);
+            if (categoryName == null) {
+                System.out.println("Ошибка: Название категории не может быть пустым!");
+                return null;
+            }
+            System.out.println("Категория определена автоматически: " + categoryName);
+        } else {
+            categoryName = resolveCategoryName(categoryName);
         }
 
         wallet.subtractFromBalance(amount);
 
         // Создаём операцию
-        Operation op = new Operation(false, description, amount, categoryName);
+        Operation op = new Operation(false, description, amount, categoryName, dateTime, idempotencyKey);
         wallet.addOperation(op);
+        registerKey(wallet, idempotencyKey);
 
-        // Обновляем статистику по категории
+        // Запоминаем соответствие "описание -> категория" для автоопределения
+        if (learnCategory) {
+            classifier.learn(description, categoryName);
+        }
+
+        // Обновляем статистику по категории (в том числе счётчик текущего периода)
+        if (wallet.getCategory(categoryName) == null) {
+            System.out.println("Создана новая категория: " + categoryName);
+        }
         Category cat = wallet.getOrCreateCategory(categoryName);
-        cat.addSpent(amount);
+        cat.addSpent(amount, op.getDateTime().toLocalDate());
 
-        // Проверяем, не превышен ли лимит для этой категории
-        if (cat.getBudgetLimit() > 0 && cat.getTotalSpent() > cat.getBudgetLimit()) {
-            System.out.println("Внимание! Превышен лимит по категории: " + categoryName);
+        // Проверяем лимит в том периоде, куда попала операция (для задним числом — не в текущем)
+        LocalDate date = op.getDateTime().toLocalDate();
+        if (cat.getBudgetLimit() > 0 && cat.getSpentInPeriod(date) > cat.getBudgetLimit()) {
+            LocalDate periodStart = cat.getPeriod().startOf(cat.getPeriod().indexOf(date));
+            String warning = categoryName;
+            if (!periodStart.equals(cat.getCurrentPeriodStart())) {
+                warning += " (период с " + periodStart + ")";
+            }
+            if (batchAlerts) {
+                batchOverLimit.add(warning);
+            } else {
+                System.out.println("Внимание! Превышен лимит по категории: " + warning);
+            }
         }
 
         // Проверяем общий баланс
         checkOverallBalance();
+        return op;
     }
 
     /**
@@ -99,8 +221,73 @@ public class FinanceManager {
         System.out.println("Бюджет для категории '" + categoryName + "' установлен: " + limit);
     }
 
+    /**
+     * Добавить правило автоопределения категории: если в описании расхода
+     * встречается ключевое слово, расход относится к указанной категории.
+     * @param keyword ключевое слово (например, "такси")
+     * @param categoryName категория (например, "Транспорт")
+     */
+    public void addCategoryRule(String keyword, String categoryName) {
+        String normalized = ExpenseClassifier.normalize(keyword);
+        if (normalized.isEmpty()) {
+            System.out.println("Ошибка: Ключевое слово не может быть пустым!");
+            return;
+        }
+        if (categoryName == null || categoryName.isEmpty()) {
+            System.out.println("Ошибка: Название категории не может быть пустым!");
+            return;
+        }
+
+        String resolved = resolveCategoryName(categoryName);
+        wallet.getCategoryRules().put(normalized, resolved);
+        classifier.rulesChanged();
+        System.out.println("Правило добавлено: '" + normalized + "' -> " + resolved);
+    }
+
+    /**
+     * Подобрать категорию по описанию (без проведения операции).
+     * @return название категории или null
+     */
+    public String suggestCategory(String description) {
+        return classifier.classify(description);
+    }
+
+    /**
+     * Если категории с точно таким названием нет, но есть с тем же названием
+     * в другом регистре ("еда" и "Еда"), используем существующую, чтобы не плодить дубликаты.
+     */
+    private String resolveCategoryName(String categoryName) {
+        if (wallet.getCategory(categoryName) != null) {
+            return categoryName;
+        }
+        String normalized = ExpenseClassifier.normalize(categoryName);
+        for (String existing : wallet.getCategories().keySet()) {
+            if (ExpenseClassifier.normalize(existing).equals(normalized)) {
+                return existing;
+            }
+        }
+        return categoryName;
+    }
+
+    /**
+     * Установить бюджетный период категории (месяц, неделя или N дней).
+     * @param categoryName название категории
+     * @param period новый период
+     */
+    public void setBudgetPeriodForCategory(String categoryName, BudgetPeriod period) {
+        if (categoryName == null || categoryName.isEmpty()) {
+            System.out.println("Ошибка: Название категории не может быть пустым!");
+            return;
+        }
+
+        Category cat = wallet.getOrCreateCategory(categoryName);
+        wallet.setCategoryPeriod(cat, period);
+        System.out.println("Период бюджета для категории '" + categoryName + "' установлен: " + period);
+    }
+
     /**
      * Вывести список всех категорий, их лимиты, потраченные суммы и сколько ещё осталось.
+     * Потраченное и остаток считаются за текущий бюджетный период.
      */
     public void listCategories() {
         if (wallet.getCategories().isEmpty()) {
@@ -110,9 +297,10 @@ public class FinanceManager {
 
         System.out.println("Список категорий:");
         for (Category cat : wallet.getCategories().values()) {
-            double left = cat.getBudgetLimit() - cat.getTotalSpent();
-            System.out.printf("- %s | Лимит: %.2f | Потрачено: %.2f | Осталось: %.2f%n",
-                    cat.getName(), cat.getBudgetLimit(), cat.getTotalSpent(), left);
+            double spent = cat.getSpentInCurrentPeriod();
+            double left = cat.getBudgetLimit() - spent;
+            System.out.printf("- %s | Период: %s | Лимит: %.2f | Потрачено: %.2f | Осталось: %.2f%n",
+                    cat.getName(), cat.getPeriod(), cat.getBudgetLimit(), spent, left);
         }
     }
 
@@ -120,30 +308,19 @@ public class FinanceManager {
      * Подсчитать общий доход (сумма всех операций, где isIncome = true).
      */
     public double calculateTotalIncome() {
-        double total = 0.0;
-        for (Operation op : wallet.getOperations()) {
-            if (op.isIncome()) {
-                total += op.getAmount();
-            }
-        }
-        return total;
+        return wallet.getTotalIncome();
     }
 
     /**
      * Подсчитать общий расход (сумма всех операций, где isIncome = false).
      */
     public double calculateTotalExpense() {
-        double total = 0.0;
-        for (Operation op : wallet.getOperations()) {
-            if (!op.isIncome()) {
-                total += op.getAmount();
-            }
-        }
-        return total;
+        return wallet.getTotalExpense();
     }
 
     /**
      * Показать статистику по всем категориям: лимиты, потрачено, остаток.
+     * Дополнительно выводим расход за прошлый период и за всё время.
      */
     public void showCategoryStats() {
         if (wallet.getCategories().isEmpty()) {
@@ -154,10 +331,204 @@ public class FinanceManager {
         System.out.println("Статистика по категориям:");
         for (Category cat : wallet.getCategories().values()) {
             double limit = cat.getBudgetLimit();
-            double spent = cat.getTotalSpent();
+            double spent = cat.getSpentInCurrentPeriod();
             double remaining = limit - spent;
-            System.out.printf("Категория '%s': Лимит=%.2f, Потрачено=%.2f, Остаток=%.2f%n",
-                    cat.getName(), limit, spent, remaining);
+            LocalDate periodStart = cat.getCurrentPeriodStart();
+            double previous = cat.getSpentInPeriod(periodStart.minusDays(1));
+            System.out.printf("Категория '%s' (период: %s с %s): Лимит=%.2f, Потрачено=%.2f, Остаток=%.2f, "
+                            + "Прошлый период=%.2f, Всего=%.2f%n",
+                    cat.getName(), cat.getPeriod(), periodStart, limit, spent, remaining,
+                    previous, cat.getTotalSpent());
+        }
+    }
+
+    /**
+     * Добавить правило регулярной операции (доход или расход).
+     * Если дата первого срабатывания уже наступила, операция проводится сразу.
+     */
+    public void addRecurringOperation(boolean isIncome, String description, double amount,
+                                      String categoryName, BudgetPeriod period, LocalDate startDate) {
+        if (amount <= 0) {
+            System.out.println("Ошибка: Сумма регулярной операции должна быть положительной!");
+            return;
+        }
+        if (!isIncome && (categoryName == null || categoryName.isEmpty())) {
+            System.out.println("Ошибка: Название категории не может быть пустым!");
+            return;
+        }
+
+        RecurringOperation rule = wallet.addRecurringOperation(isIncome, description, amount,
+                isIncome ? null : categoryName, period, startDate);
+        scheduler.schedule(rule);
+        System.out.println("Регулярная операция добавлена: " + rule);
+    }
+
+    /**
+     * Вывести список правил регулярных операций.
+     */
+    public void listRecurringOperations() {
+        if (wallet.getRecurringOperations().isEmpty()) {
+            System.out.println("Регулярных операций ещё нет.");
+            return;
+        }
+
+        System.out.println("Регулярные операции:");
+        for (RecurringOperation rule : wallet.getRecurringOperations()) {
+            System.out.println("- " + rule);
+        }
+    }
+
+    /**
+     * Сколько регулярных операций ждут проведения (не больше RECURRING_CATCH_UP_LIMIT + 1).
+     * Если больше порога, стоит спросить пользователя, прежде чем проводить их все.
+     */
+    public int countDueRecurringOperations() {
+        return scheduler.countDue(LocalDate.now(), RECURRING_CATCH_UP_LIMIT);
+    }
+
+    /**
+     * Провести все регулярные операции, срок которых уже наступил
+     * (в том числе пропущенные, пока программа не запускалась).
+     * Предупреждения о лимитах и балансе выводятся одной сводкой после догона.
+     */
+    public void runRecurringOperations() {
+        int executed;
+        batchAlerts = true;
+        try {
+            executed = scheduler.runDue(LocalDate.now(), this);
+        } finally {
+            batchAlerts = false;
+        }
+        if (executed > 0) {
+            System.out.println("Проведено регулярных операций: " + executed);
+        }
+        for (String warning : batchOverLimit) {
+            System.out.println("Внимание! Превышен лимит по категории: " + warning);
+        }
+        batchOverLimit.clear();
+        if (executed > 0) {
+            checkOverallBalance();
+        }
+    }
+
+    /**
+     * Пропустить наступившие регулярные операции, не проводя их.
+     */
+    public void skipRecurringOperations() {
+        int skipped = scheduler.skipDue(LocalDate.now());
+        System.out.println("Пропущено регулярных операций: " + skipped);
+    }
+
+    /**
+     * Провести одно срабатывание правила через обычные addIncome/addExpense,
+     * чтобы работали проверки лимитов и баланса.
+     * Ключ "правило + дата" не даёт провести одно срабатывание дважды.
+     */
+    void executeRecurring(RecurringOperation rule) {
+        LocalDateTime dateTime = rule.getNextDate().atStartOfDay();
+        String key = "recurring:" + rule.getId() + ":" + rule.getNextDate();
+        if (rule.isIncome()) {
+            addIncome(rule.getDescription(), rule.getAmount(), dateTime, key);
+        } else {
+            addExpense(rule.getDescription(), rule.getAmount(), rule.getCategoryName(), dateTime, key);
+        }
+    }
+
+    /**
+     * Поиск операций по словам из описания с дополнительными фильтрами.
+     * Сначала по индексу находим операции, где встречаются все слова запроса,
+     * и только их проверяем на категорию и даты.
+     * @param query слова для поиска (например, "продукты супермаркет")
+     * @param categoryName категория или null/пустая строка, если не важна
+     * @param from начальная дата включительно или null
+     * @param to конечная дата включительно или null
+     * @return найденные операции в порядке добавления
+     */
+    public List<Operation> searchOperations(String query, String categoryName, LocalDate from, LocalDate to) {
+        List<Operation> result = new ArrayList<>();
+        for (int number : wallet.getSearchIndex().search(query)) {
+            // Операции из холодных сегментов вне периода отсеиваем до распаковки сегмента
+            if (!wallet.mayBeWithin(number, from, to)) {
+                continue;
+            }
+            Operation op = wallet.getOperationByNumber(number);
+            if (categoryName != null && !categoryName.isEmpty() && !categoryName.equals(op.getCategoryName())) {
+                continue;
+            }
+            LocalDate date = op.getDateTime().toLocalDate();
+            if ((from != null && date.isBefore(from)) || (to != null && date.isAfter(to))) {
+                continue;
+            }
+            result.add(op);
+        }
+        return result;
+    }
+
+    /**
+     * Выгрузить все операции кошелька в файл выбранного формата.
+     * @param fileName имя файла
+     * @param format CSV, JSONL или COLUMNAR
+     * @param overwrite пользователь разрешил перезаписать существующий файл
+     */
+    public void exportOperations(String fileName, ReportExporter.Format format, boolean overwrite) {
+        if (fileName == null || fileName.isEmpty()) {
+            System.out.println("Ошибка: Имя файла не может быть пустым!");
+            return;
+        }
+
+        try {
+            long count = ReportExporter.exportOperations(wallet.getAllOperations(), Paths.get(fileName), format,
+                    overwrite);
+            System.out.println("Выгружено операций: " + count + " в файл '" + fileName + "'");
+        } catch (FileAlreadyExistsException e) {
+            System.out.println("Ошибка: файл '" + fileName + "' уже существует!");
+        } catch (IOException e) {
+            System.out.println("Ошибка при выгрузке операций: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Выгрузить статистику по категориям в файл выбранного формата.
+     * @param fileName имя файла
+     * @param format CSV, JSONL или COLUMNAR
+     * @param overwrite пользователь разрешил перезаписать существующий файл
+     */
+    public void exportCategoryStats(String fileName, ReportExporter.Format format, boolean overwrite) {
+        if (fileName == null || fileName.isEmpty()) {
+            System.out.println("Ошибка: Имя файла не может быть пустым!");
+            return;
+        }
+
+        try {
+            long count = ReportExporter.exportCategoryStats(wallet.getCategories().values(), Paths.get(fileName),
+                    format, overwrite);
+            System.out.println("Выгружено категорий: " + count + " в файл '" + fileName + "'");
+        } catch (FileAlreadyExistsException e) {
+            System.out.println("Ошибка: файл '" + fileName + "' уже существует!");
+        } catch (IOException e) {
+            System.out.println("Ошибка при выгрузке статистики: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Проверить журнал операций кошелька.
+     * @param full true — вся история (параллельно), false — только операции после последней контрольной точки
+     */
+    public void verifyLedger(boolean full) {
+        long started = System.nanoTime();
+        LedgerVerifier.Report report = full
+                ? LedgerVerifier.verifyFull(wallet, currentUser.getLogin(), DataManager::loadWalletForUser)
+                : LedgerVerifier.verifyIncremental(wallet);
+        long millis = (System.nanoTime() - started) / 1_000_000;
+
+        if (report.isOk()) {
+            System.out.println("Журнал в порядке: проверено операций " + report.getCheckedOperations()
+                    + " за " + millis + " мс, последний хэш " + LedgerHash.shortHex(wallet.getLastHash()));
+            return;
+        }
+        System.out.println("Журнал повреждён! Найдено проблем: " + report.getProblems().size());
+        for (String problem : report.getProblems()) {
+            System.out.println("- " + problem);
         }
     }
 
@@ -169,11 +540,55 @@ public class FinanceManager {
         DataManager.saveWalletForUser(currentUser.getLogin(), wallet);
     }
 
+    /**
+     * Расход-перевод получателю с данным ключом идемпотентности (последний, если их несколько).
+     * Ищем по журналу, чтобы у операции был хэш для ссылки из дохода получателя.
+     */
+    private Operation findTransferLeg(String recipientLogin, String idempotencyKey) {
+        if (idempotencyKey == null || idempotencyKey.isEmpty()) {
+            return null;
+        }
+        String category = TRANSFER_CATEGORY_PREFIX + recipientLogin;
+        Operation found = null;
+        for (Operation op : wallet.getLedgerOperations()) {
+            if (!op.isIncome() && idempotencyKey.equals(op.getIdempotencyKey())
+                    && category.equals(op.getCategoryName())) {
+                found = op;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Проверка ключа идемпотентности: если операция с таким ключом уже проводилась,
+     * сообщаем об этом и пропускаем повтор. Пустой ключ — проверки нет.
+     */
+    private boolean isDuplicate(Wallet target, String idempotencyKey) {
+        if (idempotencyKey == null || idempotencyKey.isEmpty()) {
+            return false;
+        }
+        if (target.getDedupIndex().contains(idempotencyKey, nowSeconds())) {
+            System.out.println("Операция с ключом '" + idempotencyKey + "' уже проведена, повтор пропущен.");
+            return true;
+        }
+        return false;
+    }
+
+    private void registerKey(Wallet target, String idempotencyKey) {
+        if (idempotencyKey != null && !idempotencyKey.isEmpty()) {
+            target.getDedupIndex().register(idempotencyKey, nowSeconds());
+        }
+    }
+
+    private static long nowSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+
     /**
      * Проверяем, не ушли ли мы в минус по балансу. Если да, то выводим предупреждение.
      */
     private void checkOverallBalance() {
-        if (wallet.getCurrentBalance() < 0) {
+        if (!batchAlerts && wallet.getCurrentBalance() < 0) {
             System.out.println("Внимание! Ваш баланс стал отрицательным. Расходы превысили доходы.");
         }
     }
@@ -196,6 +611,14 @@ public class FinanceManager {
      * @param amount сумма
      */
     public void transferFunds(String recipientLogin, String description, double amount) {
+        transferFunds(recipientLogin, description, amount, null);
+    }
+
+    /**
+     * Перевод с ключом идемпотентности. Ключ проверяется отдельно для каждой стороны:
+     * если при прошлой попытке доход получателю уже записан, повтор его не продублирует.
+     */
+    public void transferFunds(String recipientLogin, String description, double amount, String idempotencyKey) {
         if (amount <= 0) {
             System.out.println("Ошибка: Сумма перевода должна быть положительной!");
             return;
@@ -209,14 +632,31 @@ public class FinanceManager {
         }
 
         // Списываем средства у текущего пользователя (это будет расход)
-        addExpense(description, amount, "Перевод пользователю " + recipientLogin);
+        Operation sent = postExpense(description, amount, TRANSFER_CATEGORY_PREFIX + recipientLogin,
+                LocalDateTime.now(), idempotencyKey, false);
+        if (sent == null) {
+            // Расход с этим ключом проведён при прошлой попытке — доход получателя свяжем с ним
+            sent = findTransferLeg(recipientLogin, idempotencyKey);
+            if (sent == null) {
+                System.out.println("Ошибка: перевод не проведён.");
+                return;
+            }
+        }
 
         // Добавляем доход получателю
         // Для этого загружаем кошелёк получателя
         Wallet recipientWallet = DataManager.loadWalletForUser(recipientLogin);
+        String recipientKey = (idempotencyKey == null || idempotencyKey.isEmpty())
+                ? null : "transfer:" + currentUser.getLogin() + ":" + idempotencyKey;
+        if (isDuplicate(recipientWallet, recipientKey)) {
+            return;
+        }
         recipientWallet.addToBalance(amount);
-        Operation op = new Operation(true, "Перевод от " + currentUser.getLogin(), amount, null);
+        // Доход получателя ссылается на хэш расхода отправителя — две стороны перевода связаны в журналах
+        Operation op = new Operation(true, TRANSFER_FROM_PREFIX + currentUser.getLogin(), amount, null,
+                LocalDateTime.now(), recipientKey, sent.getHash());
         recipientWallet.addOperation(op);
+        registerKey(recipientWallet, recipientKey);
 
         // Сохраняем кошелёк получателя
         DataManager.saveWalletForUser(recipientLogin, recipientWallet);
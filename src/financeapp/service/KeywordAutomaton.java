@@ -0,0 +1,121 @@
+package financeapp.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Автомат Ахо–Корасик для поиска ключевых слов в тексте за один проход.
+ *
+ * Строится один раз по набору "ключевое слово -> значение" (у нас значение — категория),
+ * после чего поиск идёт по символам текста без возвратов, независимо от числа слов.
+ * Ключевое слово засчитывается, только если оно начинается с начала слова текста
+ * (перед ним не буква и не цифра): правило "кот" не должно срабатывать на "скотч".
+ * Если в тексте найдено несколько ключевых слов, побеждает самое длинное
+ * (при равной длине — встреченное раньше).
+ */
+class KeywordAutomaton {
+    private final List<Map<Character, Integer>> next = new ArrayList<>();
+    private final List<Integer> fail = new ArrayList<>();
+    // Слово, которое заканчивается в узле (длина 0 — такого нет)
+    private final List<String> outValue = new ArrayList<>();
+    private final List<Integer> outLength = new ArrayList<>();
+    // Ближайший по суффиксным ссылкам узел, в котором заканчивается слово (0 — такого нет)
+    private final List<Integer> outLink = new ArrayList<>();
+
+    KeywordAutomaton(Map<String, String> keywords) {
+        newNode();
+        for (Map.Entry<String, String> entry : keywords.entrySet()) {
+            addKeyword(entry.getKey(), entry.getValue());
+        }
+        buildFailLinks();
+    }
+
+    /**
+     * Найти значение самого длинного ключевого слова, входящего в text, или null.
+     * Текст должен быть уже приведён к нижнему регистру.
+     */
+    String findBest(String text) {
+        int state = 0;
+        String best = null;
+        int bestLength = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            while (state != 0 && !next.get(state).containsKey(c)) {
+                state = fail.get(state);
+            }
+            state = next.get(state).getOrDefault(c, 0);
+
+            // Слова, заканчивающиеся здесь, идут от длинных к коротким: берём первое с начала слова
+            int out = outLength.get(state) > 0 ? state : outLink.get(state);
+            while (out != 0) {
+                int length = outLength.get(out);
+                int start = i - length + 1;
+                if (start == 0 || !Character.isLetterOrDigit(text.charAt(start - 1))) {
+                    if (length > bestLength) {
+                        bestLength = length;
+                        best = outValue.get(out);
+                    }
+                    break;
+                }
+                out = outLink.get(out);
+            }
+        }
+        return best;
+    }
+
+    private int newNode() {
+        next.add(new HashMap<>());
+        fail.add(0);
+        outValue.add(null);
+        outLength.add(0);
+        outLink.add(0);
+        return next.size() - 1;
+    }
+
+    private void addKeyword(String keyword, String value) {
+        if (keyword.isEmpty()) {
+            return;
+        }
+        int state = 0;
+        for (int i = 0; i < keyword.length(); i++) {
+            char c = keyword.charAt(i);
+            Integer child = next.get(state).get(c);
+            if (child == null) {
+                child = newNode();
+                next.get(state).put(c, child);
+            }
+            state = child;
+        }
+        outValue.set(state, value);
+        outLength.set(state, keyword.length());
+    }
+
+    /**
+     * Обход в ширину: суффиксная ссылка узла указывает на самый длинный собственный суффикс,
+     * который тоже есть в боре. Заодно строим ссылки на ближайший узел со словом.
+     */
+    private void buildFailLinks() {
+        ArrayDeque<Integer> queue = new ArrayDeque<>(next.get(0).values());
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (Map.Entry<Character, Integer> edge : next.get(state).entrySet()) {
+                char c = edge.getKey();
+                int child = edge.getValue();
+
+                int f = fail.get(state);
+                while (f != 0 && !next.get(f).containsKey(c)) {
+                    f = fail.get(f);
+                }
+                Integer target = next.get(f).get(c);
+                int childFail = (target != null && target != child) ? target : 0;
+                fail.set(child, childFail);
+
+                outLink.set(child, outLength.get(childFail) > 0 ? childFail : outLink.get(childFail));
+                queue.add(child);
+            }
+        }
+    }
+}
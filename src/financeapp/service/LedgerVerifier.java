@@ -0,0 +1,289 @@
+package financeapp.service;
+
+import financeapp.model.LedgerCheckpoint;
+import financeapp.model.LedgerHash;
+import financeapp.model.Operation;
+import financeapp.model.OperationSegment;
+import financeapp.model.Wallet;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Проверка журнала операций кошелька.
+ *
+ * Быстрая проверка (verifyIncremental) начинается с последней контрольной точки:
+ * сверяет, что точка совпадает с хэшем операции, пересчитывает хэши операций после неё
+ * и сравнивает итоговый баланс с currentBalance.
+ *
+ * Полная проверка (verifyFull) проходит всю историю. История режется на части
+ * (холодные сегменты и куски горячего списка), которые проверяются параллельно;
+ * затем последовательно сверяются стыки частей, корни Меркла и балансы контрольных точек.
+ * Если передан способ загрузить чужой кошелёк, сверяются и переводы: доход "Перевод от X"
+ * ссылается на хэш расхода в журнале X, и такая операция там должна быть.
+ */
+public class LedgerVerifier {
+    // Баланс хранится в double, поэтому сравниваем с точностью до полкопейки
+    private static final double BALANCE_TOLERANCE = 0.005;
+
+    /**
+     * Результат проверки: сколько операций проверено и список найденных проблем.
+     */
+    public static class Report {
+        private final int checkedOperations;
+        private final List<String> problems;
+
+        Report(int checkedOperations, List<String> problems) {
+            this.checkedOperations = checkedOperations;
+            this.problems = problems;
+        }
+
+        public int getCheckedOperations() {
+            return checkedOperations;
+        }
+
+        public List<String> getProblems() {
+            return problems;
+        }
+
+        public boolean isOk() {
+            return problems.isEmpty();
+        }
+    }
+
+    /**
+     * Быстрая проверка: только операции после последней контрольной точки.
+     */
+    public static Report verifyIncremental(Wallet wallet) {
+        List<String> problems = new ArrayList<>();
+        List<LedgerCheckpoint> checkpoints = wallet.getCheckpoints();
+        int count = wallet.getOperationCount();
+
+        int start = 0;
+        byte[] prev = LedgerHash.GENESIS;
+        double balance = 0.0;
+        if (!checkpoints.isEmpty()) {
+            LedgerCheckpoint last = checkpoints.get(checkpoints.size() - 1);
+            start = last.getOperationCount();
+            prev = last.getChainHash();
+            balance = last.getBalance();
+            if (start > count || !Arrays.equals(wallet.getLedgerOperation(start - 1).getHash(), prev)) {
+                problems.add("Контрольная точка на операции #" + start + " не совпадает с историей");
+            }
+        }
+
+        for (int n = start; n < count; n++) {
+            Operation op = wallet.getLedgerOperation(n);
+            checkOperation(n, op, prev, problems);
+            prev = op.getHash();
+            balance += signedAmount(op);
+        }
+
+        checkTotals(wallet, prev, balance, problems);
+        return new Report(count - start, problems);
+    }
+
+    /**
+     * Полная проверка всей истории (части проверяются параллельно).
+     */
+    public static Report verifyFull(Wallet wallet) {
+        byte[] expectedTail = wallet.getLastHash();
+        int count = wallet.getOperationCount();
+        List<String> problems = Collections.synchronizedList(new ArrayList<>());
+
+        // Делим историю на независимые части: холодные сегменты и куски горячего списка
+        List<Integer> starts = new ArrayList<>();
+        List<Supplier<List<Operation>>> parts = new ArrayList<>();
+        int offset = 0;
+        for (OperationSegment segment : wallet.getColdSegments()) {
+            starts.add(offset);
+            parts.add(segment::decodeChained);
+            offset += segment.getCount();
+        }
+        List<Operation> hot = wallet.getOperations();
+        for (int from = 0; from < hot.size(); from += Wallet.CHECKPOINT_INTERVAL) {
+            int to = Math.min(hot.size(), from + Wallet.CHECKPOINT_INTERVAL);
+            starts.add(offset + from);
+            List<Operation> chunk = hot.subList(from, to);
+            parts.add(() -> chunk);
+        }
+
+        byte[][] hashes = new byte[count][];
+        double[] amounts = new double[count];
+        byte[][] partHeads = new byte[parts.size()][];
+
+        IntStream.range(0, parts.size()).parallel().forEach(p -> {
+            int base = starts.get(p);
+            List<Operation> ops;
+            try {
+                ops = parts.get(p).get();
+            } catch (RuntimeException e) {
+                problems.add("Не удалось прочитать операции начиная с #" + base + ": " + e.getMessage());
+                return;
+            }
+            byte[] prev = ops.isEmpty() ? null : ops.get(0).getPrevHash();
+            partHeads[p] = prev;
+            for (int i = 0; i < ops.size(); i++) {
+                Operation op = ops.get(i);
+                checkOperation(base + i, op, prev, problems);
+                prev = op.getHash();
+                hashes[base + i] = op.getHash();
+                amounts[base + i] = signedAmount(op);
+            }
+        });
+
+        // Стыки частей: начало каждой части — конец предыдущей
+        byte[] prev = LedgerHash.GENESIS;
+        for (int p = 0; p < parts.size(); p++) {
+            if (partHeads[p] != null && prev != null && !Arrays.equals(partHeads[p], prev)) {
+                problems.add("Разрыв цепочки перед операцией #" + starts.get(p));
+            }
+            int end = p + 1 < parts.size() ? starts.get(p + 1) : count;
+            if (end > starts.get(p)) {
+                prev = hashes[end - 1];
+            }
+        }
+        // Хэши холодных операций пересчитываются при распаковке — итог должен совпасть с сохранённым
+        List<OperationSegment> segments = wallet.getColdSegments();
+        for (int s = 0; s < segments.size(); s++) {
+            int last = starts.get(s) + segments.get(s).getCount() - 1;
+            if (hashes[last] != null && !Arrays.equals(hashes[last], segments.get(s).getTailHash())) {
+                problems.add("Холодный сегмент с операциями #" + starts.get(s) + "..#" + last + " изменён");
+            }
+        }
+
+        // Контрольные точки: корень Меркла и изменение баланса для каждого блока (блоки независимы)
+        List<LedgerCheckpoint> checkpoints = wallet.getCheckpoints();
+        IntStream.range(0, checkpoints.size()).parallel().forEach(k -> {
+            LedgerCheckpoint cp = checkpoints.get(k);
+            int from = k == 0 ? 0 : checkpoints.get(k - 1).getOperationCount();
+            int to = cp.getOperationCount();
+            if (to > count || to <= from) {
+                problems.add("Контрольная точка на операции #" + to + " за пределами истории");
+                return;
+            }
+            List<byte[]> block = Arrays.asList(hashes).subList(from, to);
+            if (block.contains(null)) {
+                return; // о нечитаемых операциях уже сообщено выше
+            }
+            if (!Arrays.equals(LedgerHash.merkleRoot(block), cp.getMerkleRoot())
+                    || !Arrays.equals(hashes[to - 1], cp.getChainHash())) {
+                problems.add("Блок операций #" + from + "..#" + (to - 1) + " не совпадает с контрольной точкой");
+            }
+            double delta = 0.0;
+            for (int n = from; n < to; n++) {
+                delta += amounts[n];
+            }
+            double expected = cp.getBalance() - (k == 0 ? 0.0 : checkpoints.get(k - 1).getBalance());
+            if (Math.abs(expected - delta) > BALANCE_TOLERANCE) {
+                problems.add("Баланс блока операций #" + from + "..#" + (to - 1) + " не совпадает с контрольной точкой");
+            }
+        });
+
+        double balance = 0.0;
+        for (double amount : amounts) {
+            balance += amount;
+        }
+
+        checkTotals(wallet, count == 0 ? LedgerHash.GENESIS : hashes[count - 1], balance, problems);
+        if (!Arrays.equals(expectedTail, wallet.getLastHash())) {
+            problems.add("Журнал изменился во время проверки");
+        }
+        return new Report(count, new ArrayList<>(problems));
+    }
+
+    /**
+     * Полная проверка и сверка входящих переводов с журналами отправителей.
+     * @param login владелец кошелька
+     * @param walletLoader загрузка кошелька по логину (каждый отправитель загружается один раз)
+     */
+    public static Report verifyFull(Wallet wallet, String login, Function<String, Wallet> walletLoader) {
+        Report report = verifyFull(wallet);
+        List<String> problems = new ArrayList<>(report.getProblems());
+        checkTransfers(wallet, login, walletLoader, problems);
+        return new Report(report.getCheckedOperations(), problems);
+    }
+
+    /**
+     * Каждый входящий перевод со ссылкой на парную операцию должен найтись в журнале отправителя:
+     * расход в категории "Перевод пользователю <login>" с тем же хэшем и той же суммой.
+     */
+    private static void checkTransfers(Wallet wallet, String login, Function<String, Wallet> walletLoader,
+                                       List<String> problems) {
+        String category = FinanceManager.TRANSFER_CATEGORY_PREFIX + login;
+        Map<String, Map<ByteBuffer, Operation>> sentBySender = new HashMap<>();
+        int number = 0;
+        for (Operation op : wallet.getAllOperations()) {
+            if (op.isIncome() && op.getCounterpartHash() != null && op.getDescription() != null
+                    && op.getDescription().startsWith(FinanceManager.TRANSFER_FROM_PREFIX)) {
+                String sender = op.getDescription().substring(FinanceManager.TRANSFER_FROM_PREFIX.length());
+                Map<ByteBuffer, Operation> sent = sentBySender.computeIfAbsent(sender, s -> {
+                    // Перевод самому себе сверяем с кошельком в памяти: на диске он может отставать
+                    Wallet senderWallet = s.equals(login) ? wallet : walletLoader.apply(s);
+                    Map<ByteBuffer, Operation> byHash = new HashMap<>();
+                    for (Operation candidate : senderWallet.getLedgerOperations()) {
+                        if (!candidate.isIncome() && category.equals(candidate.getCategoryName())) {
+                            byHash.put(ByteBuffer.wrap(candidate.getHash()), candidate);
+                        }
+                    }
+                    return byHash;
+                });
+                Operation pair = sent.get(ByteBuffer.wrap(op.getCounterpartHash()));
+                if (pair == null) {
+                    problems.add("Перевод от " + sender + " (операция #" + number
+                            + ") не найден в журнале отправителя");
+                } else if (Math.abs(pair.getAmount() - op.getAmount()) > BALANCE_TOLERANCE) {
+                    problems.add("Перевод от " + sender + " (операция #" + number
+                            + "): сумма не совпадает с журналом отправителя");
+                }
+            }
+            number++;
+        }
+    }
+
+    /**
+     * Операция должна ссылаться на предшественника и иметь правильно посчитанный хэш.
+     */
+    private static void checkOperation(int number, Operation op, byte[] expectedPrev, List<String> problems) {
+        if (op.getHash() == null || op.getPrevHash() == null) {
+            problems.add("Операция #" + number + " не встроена в журнал");
+            return;
+        }
+        if (expectedPrev != null && !Arrays.equals(op.getPrevHash(), expectedPrev)) {
+            problems.add("Операция #" + number + " ссылается не на предыдущую операцию");
+        }
+        if (!Arrays.equals(LedgerHash.compute(op.getPrevHash(), op), op.getHash())) {
+            problems.add("Операция #" + number + " изменена (хэш не совпадает): " + op);
+        }
+    }
+
+    /**
+     * Конец цепочки и баланс по журналу должны совпадать с тем, что хранит кошелёк.
+     */
+    private static void checkTotals(Wallet wallet, byte[] tail, double balance, List<String> problems) {
+        if (!Arrays.equals(tail, wallet.getLastHash())) {
+            problems.add("Последний хэш журнала не совпадает с кошельком: "
+                    + LedgerHash.shortHex(tail) + " != " + LedgerHash.shortHex(wallet.getLastHash()));
+        }
+        if (Math.abs(balance - wallet.getCurrentBalance()) > BALANCE_TOLERANCE) {
+            problems.add(String.format("Баланс кошелька %.2f не совпадает с журналом операций %.2f",
+                    wallet.getCurrentBalance(), balance));
+        }
+        if (Math.abs(balance - wallet.getLedgerBalance()) > BALANCE_TOLERANCE) {
+            problems.add(String.format("Сохранённый баланс журнала %.2f не совпадает с операциями %.2f",
+                    wallet.getLedgerBalance(), balance));
+        }
+    }
+
+    private static double signedAmount(Operation op) {
+        return op.isIncome() ? op.getAmount() : -op.getAmount();
+    }
+}
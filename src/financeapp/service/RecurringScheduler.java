@@ -0,0 +1,90 @@
+package financeapp.service;
+
+import financeapp.model.RecurringOperation;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Планировщик регулярных операций.
+ *
+ * Правила лежат в очереди с приоритетом по дате следующего срабатывания
+ * (по сути, это "очередь задержек"): чтобы понять, есть ли что выполнять,
+ * достаточно посмотреть на голову очереди, а не перебирать все правила.
+ * Поэтому количество правил почти не влияет на стоимость проверки.
+ *
+ * Сами операции планировщик не создаёт — он вызывает FinanceManager,
+ * чтобы лимиты по категориям и предупреждения о балансе работали как обычно.
+ */
+public class RecurringScheduler {
+    private final PriorityQueue<RecurringOperation> queue =
+            new PriorityQueue<>(Comparator.comparing(RecurringOperation::getNextDate));
+
+    public RecurringScheduler(List<RecurringOperation> rules) {
+        queue.addAll(rules);
+    }
+
+    /**
+     * Добавить новое правило в расписание.
+     */
+    public void schedule(RecurringOperation rule) {
+        queue.add(rule);
+    }
+
+    /**
+     * Сколько срабатываний с датой не позже today ждут выполнения.
+     * Считаем не больше limit + 1: точное число нужно только до порога подтверждения.
+     * Даты считаются от даты начала, как в getNextDate(), иначе конец месяца "съезжал" бы
+     * (31 января -> 28 февраля -> 28 марта вместо 31 марта).
+     */
+    public int countDue(LocalDate today, int limit) {
+        int due = 0;
+        for (RecurringOperation rule : queue) {
+            LocalDate next = rule.getNextDate();
+            for (long n = 1; due <= limit && !next.isAfter(today); n++) {
+                due++;
+                next = rule.getPeriod().plus(rule.getStartDate(), rule.getExecutedCount() + n);
+            }
+            if (due > limit) {
+                break;
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Пропустить все срабатывания с датой не позже today, не проводя операций
+     * (пользователь отказался догонять слишком длинную историю).
+     * @return сколько срабатываний пропущено
+     */
+    public int skipDue(LocalDate today) {
+        int skipped = 0;
+        while (!queue.isEmpty() && !queue.peek().getNextDate().isAfter(today)) {
+            RecurringOperation rule = queue.poll();
+            rule.markExecuted();
+            queue.add(rule);
+            skipped++;
+        }
+        return skipped;
+    }
+
+    /**
+     * Выполнить все срабатывания с датой не позже today.
+     * Пропущенные (пока программа не запускалась) срабатывания догоняются одним проходом,
+     * каждое — со своей датой, чтобы попасть в нужный бюджетный период.
+     * @return сколько операций было проведено
+     */
+    public int runDue(LocalDate today, FinanceManager financeManager) {
+        int executed = 0;
+        while (!queue.isEmpty() && !queue.peek().getNextDate().isAfter(today)) {
+            RecurringOperation rule = queue.poll();
+            financeManager.executeRecurring(rule);
+            rule.markExecuted();
+            queue.add(rule);
+            executed++;
+        }
+        return executed;
+    }
+}